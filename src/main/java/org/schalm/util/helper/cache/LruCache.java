@@ -0,0 +1,136 @@
+package org.schalm.util.helper.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thread-safe map with a maximum size, evicting the least recently used entry when full.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ * @version $Id$
+ */
+public class LruCache<K, V> {
+    private final int maxEntries;
+    private final LinkedHashMap<K, V> map;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxEntries maximum number of entries
+     */
+    public LruCache(final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.maxEntries;
+            }
+
+        };
+    }
+
+    /**
+     * Get the value for the key and mark it as recently used.
+     *
+     * @param key
+     * @return the value or null, if there is no entry for the key
+     */
+    public synchronized V get(K key) {
+        V value = map.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Store a value, evicting the least recently used entry if the cache is full.
+     *
+     * @param key
+     * @param value
+     * @return the previous value for the key or null
+     */
+    public synchronized V put(K key, V value) {
+        return map.put(key, value);
+    }
+
+    /**
+     * Remove the entry for the key.
+     *
+     * @param key
+     * @return the removed value or null
+     */
+    public synchronized V remove(K key) {
+        return map.remove(key);
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * The current number of entries.
+     *
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * The maximum number of entries.
+     *
+     * @return maximum number of entries
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Number of calls to {@link #get(Object)} that found a value.
+     *
+     * @return number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of calls to {@link #get(Object)} that found no value.
+     *
+     * @return number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * A copy of all entries from the least to the most recently used one.
+     *
+     * @return list of entries
+     */
+    public synchronized List<Map.Entry<K, V>> entries() {
+        List<Map.Entry<K, V>> entries = new ArrayList<>(map.size());
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,245 @@
+package org.schalm.util.helper.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.UnmappableCharacterException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Writes text to a file through a <code>FileChannel</code>, encoding it with an explicit charset into a pooled direct
+ * buffer.<br />
+ * Character sequences are encoded without being copied to an intermediate string or array. In atomic mode the text is
+ * written to a temporary file in the same directory, forced to disk and renamed to the target file on {@link #close()},
+ * after which the directory is forced to disk as well, so readers see either the old or the complete new content;
+ * {@link #abort()} discards it instead. Characters the charset cannot encode are never replaced: writing them throws an
+ * <code>UnmappableCharacterException</code>.
+ *
+ * @version $Id$
+ */
+public final class ChannelTextWriter extends Writer {
+    /**
+     * Size of the direct buffers used for encoding (64 KB).
+     */
+    public static final int BUFFER_SIZE = FileHelper.BUFFER_SIZE;
+    /**
+     * Number of released direct buffers kept for reuse, further ones are left to the garbage collector.
+     */
+    private static final int MAX_POOLED_BUFFERS = 2 * Runtime.getRuntime().availableProcessors();
+    private static final Queue<ByteBuffer> BUFFERS = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+    private final Path target;
+    private final Path temp;
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final CharBuffer leftover = CharBuffer.allocate(2);
+    private ByteBuffer buffer;
+    private boolean closed = false;
+
+    /**
+     * Creates a writer replacing the content of the file.
+     *
+     * @param file
+     * @param charset the encoding of the file
+     * @throws IOException
+     */
+    public ChannelTextWriter(File file, Charset charset) throws IOException {
+        this(file, charset, false);
+    }
+
+    /**
+     * Creates a writer for a file.
+     *
+     * @param file
+     * @param charset the encoding of the file
+     * @param atomic whether to write to a temporary file that is forced to disk and renamed to file on close
+     * @throws IOException
+     */
+    public ChannelTextWriter(File file, Charset charset, boolean atomic) throws IOException {
+        this.target = file.toPath().toAbsolutePath();
+        if (atomic) {
+            this.temp = FileHelper.createTempSibling(file).toPath();
+            this.channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            this.temp = null;
+            this.channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer pooled = BUFFERS.poll();
+        this.buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        encode(CharBuffer.wrap(cbuf, off, len), false);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        encode(CharBuffer.wrap(str, off, off + len), false);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        encode(CharBuffer.wrap(csq != null ? csq : "null"), false);
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) throws IOException {
+        encode(CharBuffer.wrap(csq != null ? csq : "null", start, end), false);
+        return this;
+    }
+
+    private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+        ensureOpen();
+        if (leftover.position() > 0) {
+            // complete a surrogate pair split between two calls
+            while (leftover.hasRemaining() && in.hasRemaining()) {
+                leftover.put(in.get());
+            }
+            leftover.flip();
+            encodeFully(leftover, endOfInput && !in.hasRemaining());
+            leftover.compact();
+        }
+        encodeFully(in, endOfInput);
+        if (in.hasRemaining()) {
+            leftover.put(in);
+        }
+    }
+
+    private void encodeFully(CharBuffer in, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(in, buffer, endOfInput);
+            if (result.isUnderflow()) {
+                return;
+            }
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isUnmappable()) {
+                throw new UnencodableCharacterException(result.length(), String.format(Locale.ENGLISH,
+                        "Character U+%04X cannot be encoded in %s", (int) in.get(in.position()), encoder.charset()));
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+    }
+
+    /**
+     * Writes all buffered bytes to the channel without forcing them to disk.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+
+    /**
+     * Writes all remaining text and closes the file. In atomic mode the file is forced to disk and moved to the target.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        boolean complete = false;
+        try {
+            encode(CharBuffer.allocate(0), true);
+            while (encoder.flush(buffer).isOverflow()) {
+                drain();
+            }
+            drain();
+            if (temp != null) {
+                channel.force(true);
+            }
+            complete = true;
+        } finally {
+            release();
+            if (temp != null) {
+                if (complete) {
+                    FileHelper.replaceFile(temp.toFile(), target.toFile());
+                } else {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the file without writing the remaining text. In atomic mode the target file is left unchanged.
+     *
+     * @throws IOException
+     */
+    public void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            release();
+        } finally {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private void release() throws IOException {
+        closed = true;
+        buffer.clear();
+        BUFFERS.offer(buffer);
+        buffer = null;
+        channel.close();
+    }
+
+    /**
+     * Names the character that cannot be encoded, instead of only its length.
+     */
+    private static final class UnencodableCharacterException extends UnmappableCharacterException {
+        private static final long serialVersionUID = 1L;
+        private final String message;
+
+        UnencodableCharacterException(int length, String message) {
+            super(length);
+            this.message = message;
+        }
+
+        @Override
+        public String getMessage() {
+            return message;
+        }
+
+    }
+
+}
@@ -0,0 +1,246 @@
+package org.schalm.util.helper.file;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.schalm.util.helper.cache.LruCache;
+
+/**
+ * Cache for file checksums, keyed by the file's path, size, modification time and file key (inode).<br />
+ * A cached checksum is returned as long as none of these attributes has changed, otherwise the file is read again.
+ * The cache can be saved to and loaded from an index file to survive restarts. Instances are thread-safe.
+ *
+ * @version $Id$
+ */
+public class ChecksumCache {
+    private static final Log log = LogFactory.getLog(ChecksumCache.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String INDEX_HEADER = "# ChecksumCache 1";
+    private static final char SEPARATOR = '\t';
+    private final LruCache<String, Entry> cache;
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxEntries maximum number of files to keep checksums for
+     */
+    public ChecksumCache(int maxEntries) {
+        this.cache = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Get the checksums of a file, computing only those not cached for its current state.
+     *
+     * @param file
+     * @param algorithms names of the checksums as supported by {@link MultiDigest}
+     * @return hexadecimal strings by algorithm name
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public Map<String, String> getChecksums(File file, String... algorithms) throws IOException, NoSuchAlgorithmException {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        String key = path.toString();
+        Entry current = Entry.of(Files.readAttributes(path, BasicFileAttributes.class));
+        Entry cached = cache.get(key);
+        if (cached == null || !cached.sameFile(current)) {
+            cached = current;
+        }
+        List<String> missing = new ArrayList<>(algorithms.length);
+        for (String algorithm : algorithms) {
+            if (!cached.checksums.containsKey(algorithm)) {
+                missing.add(algorithm);
+            }
+        }
+        if (missing.isEmpty()) {
+            hits.incrementAndGet();
+            return cached.select(algorithms);
+        }
+
+        Map<String, String> computed = MultiDigest.digest(file, missing.toArray(new String[missing.size()]));
+        Entry after = Entry.of(Files.readAttributes(path, BasicFileAttributes.class));
+        Entry updated = new Entry(cached.size, cached.lastModified, cached.fileKey, cached.checksums);
+        updated.checksums.putAll(computed);
+        if (after.sameFile(cached)) {
+            cache.put(key, updated);
+        } else if (log.isDebugEnabled()) {
+            log.debug("File changed while computing checksums, not cached: " + key);
+        }
+
+        return updated.select(algorithms);
+    }
+
+    /**
+     * Compute a file's CRC32 checksum.
+     *
+     * @param file
+     * @return hexadecimal string
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public String getCRC32(File file) throws IOException, NoSuchAlgorithmException {
+        return getChecksums(file, MultiDigest.CRC32).get(MultiDigest.CRC32);
+    }
+
+    /**
+     * Compute a file's MD5 checksum.
+     *
+     * @param file
+     * @return hexadecimal string
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public String getMD5(File file) throws IOException, NoSuchAlgorithmException {
+        return getChecksums(file, MultiDigest.MD5).get(MultiDigest.MD5);
+    }
+
+    /**
+     * Compute a file's SHA-1 checksum.
+     *
+     * @param file
+     * @return hexadecimal string
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public String getSHA1(File file) throws IOException, NoSuchAlgorithmException {
+        return getChecksums(file, MultiDigest.SHA1).get(MultiDigest.SHA1);
+    }
+
+    /**
+     * The number of files with cached checksums.
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * The number of lookups answered from the cache without reading the file.
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Write all entries to an index file, replacing it atomically where the file system allows.
+     *
+     * @param index
+     * @throws IOException
+     */
+    public void save(File index) throws IOException {
+        // created with the default permissions, unlike Files.createTempFile
+        Path temp = FileHelper.createTempSibling(index).toPath();
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, UTF8)) {
+                writer.write(INDEX_HEADER);
+                writer.newLine();
+                for (Map.Entry<String, Entry> mapEntry : cache.entries()) {
+                    Entry entry = mapEntry.getValue();
+                    writer.append(Long.toString(entry.size)).append(SEPARATOR);
+                    writer.append(Long.toString(entry.lastModified)).append(SEPARATOR);
+                    writer.append(entry.fileKey).append(SEPARATOR);
+                    boolean first = true;
+                    for (Map.Entry<String, String> checksum : entry.checksums.entrySet()) {
+                        if (!first) {
+                            writer.append(',');
+                        }
+                        writer.append(checksum.getKey()).append('=').append(checksum.getValue());
+                        first = false;
+                    }
+                    writer.append(SEPARATOR).append(mapEntry.getKey());
+                    writer.newLine();
+                }
+            }
+            FileHelper.replaceFile(temp.toFile(), index);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Add all entries of an index file written by {@link #save(File)}.<br />
+     * The entries are only used while the files' attributes still match.
+     *
+     * @param index
+     * @throws IOException if the file cannot be read or has an invalid format
+     */
+    public void load(File index) throws IOException {
+        try (LineReader reader = FileHelper.openLines(index, UTF8)) {
+            if (!reader.next() || !INDEX_HEADER.contentEquals(reader.line())) {
+                throw new IOException("Not a checksum index: " + index);
+            }
+            while (reader.next()) {
+                String line = reader.line().toString();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(String.valueOf(SEPARATOR), 5);
+                if (fields.length != 5) {
+                    throw new IOException("Invalid entry in line " + reader.getLineNumber() + " of " + index);
+                }
+                try {
+                    Entry entry = new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2],
+                            new LinkedHashMap<String, String>());
+                    for (String checksum : fields[3].split(",")) {
+                        int equals = checksum.indexOf('=');
+                        if (equals > 0) {
+                            entry.checksums.put(checksum.substring(0, equals), checksum.substring(equals + 1));
+                        }
+                    }
+                    cache.put(fields[4], entry);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid entry in line " + reader.getLineNumber() + " of " + index, e);
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+        private final Map<String, String> checksums;
+
+        Entry(long size, long lastModified, String fileKey, Map<String, String> checksums) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.checksums = new LinkedHashMap<>(checksums);
+        }
+
+        static Entry of(BasicFileAttributes attributes) {
+            Object fileKey = attributes.fileKey();
+            return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    fileKey == null ? "" : fileKey.toString(), new LinkedHashMap<String, String>());
+        }
+
+        boolean sameFile(Entry other) {
+            return size == other.size && lastModified == other.lastModified && fileKey.equals(other.fileKey);
+        }
+
+        Map<String, String> select(String... algorithms) {
+            Map<String, String> result = new LinkedHashMap<>();
+            for (String algorithm : algorithms) {
+                result.put(algorithm, checksums.get(algorithm));
+            }
+            return result;
+        }
+
+    }
+
+}
@@ -6,19 +6,33 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.schalm.util.helper.string.HexHelper;
 
 /**
  * Helper methods for file operations.
@@ -31,6 +45,16 @@ public final class FileHelper {
     public static final String FILE_SEPARATOR = System.getProperty("file.separator");
     private static final String LINE_SEPARATOR = System.getProperty("line.separator");
     static final int BUFFER_SIZE = 0x10000; // input buffer size in bytes (64 KB)
+    /**
+     * Files of at least this size are memory-mapped by {@link #readTextFile(File, Charset)} (1 MB).
+     */
+    public static final long MAPPING_THRESHOLD = 0x100000;
+    /**
+     * Number of resources cached by {@link #readTextStream(String, Charset)}.
+     */
+    public static final int RESOURCE_CACHE_SIZE = 64;
+    private static final Random RANDOM = new Random();
+    private static final ResourceLoader RESOURCES = new ResourceLoader(FileHelper.class.getClassLoader(), RESOURCE_CACHE_SIZE);
 
     private FileHelper() {
         // utility class
@@ -52,6 +76,51 @@ public final class FileHelper {
         return sb.toString();
     }
 
+    /**
+     * Read a text file with the given charset and return it in one string.<br />
+     * The file is read through a <code>FileChannel</code> and decoded in one pass, line endings are kept as they are.
+     * Files of at least {@link #MAPPING_THRESHOLD} bytes are memory-mapped.
+     *
+     * @param file
+     * @param charset the encoding of the file
+     * @return the file's content
+     * @throws IOException
+     */
+    public static String readTextFile(File file, Charset charset) throws IOException {
+        return readTextFile(file, charset, MAPPING_THRESHOLD);
+    }
+
+    /**
+     * Read a text file with the given charset and return it in one string.<br />
+     * Files of at least <code>mappingThreshold</code> bytes are memory-mapped, smaller ones are read into a buffer of
+     * the file's size.
+     *
+     * @param file
+     * @param charset the encoding of the file
+     * @param mappingThreshold minimum file size in bytes to use a <code>MappedByteBuffer</code>
+     * @return the file's content
+     * @throws IOException
+     */
+    public static String readTextFile(File file, Charset charset, long mappingThreshold) throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to be read into one string: " + file);
+            }
+            if (size >= mappingThreshold) {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return charset.decode(mapped).toString();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // fill the buffer
+            }
+
+            return new String(buffer.array(), 0, buffer.position(), charset);
+        }
+    }
+
     /**
      * Read a text file and return it in one string.
      *
@@ -60,14 +129,44 @@ public final class FileHelper {
      * @throws IOException
      */
     public static String readTextStream(String filename) throws IOException {
+        InputStream input = FileHelper.class.getClassLoader().getResourceAsStream(filename);
+        if (input == null) {
+            throw new FileNotFoundException("Resource not found: " + filename);
+        }
         StringBuffer sb = new StringBuffer();
-        BufferedReader fileReader = new BufferedReader(
-                new InputStreamReader(FileHelper.class.getClassLoader().getResourceAsStream(filename)));
-        FileHelper.read(sb, fileReader);
+        try (BufferedReader fileReader = new BufferedReader(new InputStreamReader(input))) {
+            FileHelper.read(sb, fileReader);
+        }
 
         return sb.toString();
     }
 
+    /**
+     * Read a classpath resource with the given charset and return it in one string.<br />
+     * The resource is read in one go and kept in a cache of the {@link #RESOURCE_CACHE_SIZE} most recently used
+     * resources, line endings are kept as they are.
+     *
+     * @param filename the resource name
+     * @param charset the encoding of the resource
+     * @return the resource's content
+     * @throws IOException
+     */
+    public static String readTextStream(String filename, Charset charset) throws IOException {
+        return RESOURCES.getText(filename, charset);
+    }
+
+    /**
+     * Open a text file for reading line by line without loading it completely.
+     *
+     * @param file
+     * @param charset the encoding of the file
+     * @return a reader positioned before the first line, to be closed by the caller
+     * @throws IOException
+     */
+    public static LineReader openLines(File file, Charset charset) throws IOException {
+        return new LineReader(FileChannel.open(file.toPath(), StandardOpenOption.READ), charset);
+    }
+
     private static void read(StringBuffer sb, BufferedReader fileReader) throws IOException {
         String line;
         do {
@@ -92,6 +191,102 @@ public final class FileHelper {
         }
     }
 
+    /**
+     * Write text to a file with the given charset, without copying it to a string first.
+     *
+     * @param file
+     * @param content
+     * @param charset the encoding of the file
+     * @throws IOException
+     */
+    public static void writeTextFile(File file, CharSequence content, Charset charset) throws IOException {
+        try (ChannelTextWriter writer = new ChannelTextWriter(file, charset)) {
+            writer.append(content);
+        }
+    }
+
+    /**
+     * Write text generated piece by piece to a file with the given charset.<br />
+     * In atomic mode the file is only replaced if the producer completes, after the new content has been forced to
+     * disk.
+     *
+     * @param file
+     * @param charset the encoding of the file
+     * @param atomic whether to write to a temporary file that is renamed to file when complete
+     * @param producer generates the content
+     * @throws IOException
+     */
+    public static void writeTextFile(File file, Charset charset, boolean atomic, TextProducer producer) throws IOException {
+        ChannelTextWriter writer = new ChannelTextWriter(file, charset, atomic);
+        boolean complete = false;
+        try {
+            producer.writeTo(writer);
+            complete = true;
+        } finally {
+            if (complete) {
+                writer.close();
+            } else {
+                writer.abort();
+            }
+        }
+    }
+
+    /**
+     * Create an empty temporary file in the directory of a target file, to be moved to the target with
+     * {@link #replaceFile(File, File)} when it is complete. Unlike <code>File.createTempFile</code> this uses the
+     * default permissions, so the target gets the same permissions as a file written directly.
+     *
+     * @param target
+     * @return the temporary file
+     * @throws IOException
+     */
+    public static File createTempSibling(File target) throws IOException {
+        Path path = target.toPath().toAbsolutePath();
+        while (true) {
+            Path temp = path.resolveSibling(path.getFileName() + "." + Long.toHexString(RANDOM.nextLong()) + ".tmp");
+            try {
+                return Files.createFile(temp).toFile();
+            } catch (FileAlreadyExistsException e) {
+                // try another name
+            }
+        }
+    }
+
+    /**
+     * Replace a file by a complete temporary file of the same directory, atomically if the file system supports it.
+     * The content of the temporary file is forced to disk before the rename and the directory after it, so after a
+     * crash the target has either its old or its complete new content; where the platform cannot force a directory,
+     * the rename itself may be lost. The temporary file is deleted if it cannot be moved.
+     *
+     * @param temp see {@link #createTempSibling(File)}
+     * @param target
+     * @throws IOException
+     */
+    public static void replaceFile(File temp, File target) throws IOException {
+        try {
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            try {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        Path directory = target.toPath().toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not every platform can open or force a directory, e.g. Windows
+            if (log.isDebugEnabled()) {
+                log.debug("Cannot force directory " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Create a new zip archive including the files given.<br />
      * Directories are skipped.
@@ -101,7 +296,6 @@ public final class FileHelper {
      * @throws IOException
      */
     public static void zip(File destFile, File[] files) throws IOException {
-        BufferedInputStream origin;
         FileOutputStream dest = new FileOutputStream(destFile);
         try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(dest))) {
             out.setMethod(ZipOutputStream.DEFLATED);
@@ -116,47 +310,56 @@ public final class FileHelper {
                     }
                     continue;
                 }
-                FileInputStream fi = new FileInputStream(file);
-                origin = new BufferedInputStream(fi, BUFFER_SIZE);
-                ZipEntry entry = new ZipEntry(file.getName());
-                out.putNextEntry(entry);
-                int count;
-                while ((count = origin.read(data, 0, BUFFER_SIZE)) != -1) {
-                    out.write(data, 0, count);
+                try (BufferedInputStream origin = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+                    ZipEntry entry = new ZipEntry(file.getName());
+                    out.putNextEntry(entry);
+                    int count;
+                    while ((count = origin.read(data, 0, BUFFER_SIZE)) != -1) {
+                        out.write(data, 0, count);
+                    }
                 }
-                origin.close();
             }
             out.flush();
         }
     }
 
     /**
-     * Extract a zip archive to destDir.
+     * Create a new zip archive including the files given, compressing the files concurrently.<br />
+     * Directories are skipped. The entries are written in the given order, at most two entries per available processor
+     * are compressed ahead of the writing thread.
+     *
+     * @param destFile
+     * @param files
+     * @param executor runs the compression of the single files
+     * @throws IOException
+     */
+    public static void zip(File destFile, File[] files, ExecutorService executor) throws IOException {
+        new ParallelZipWriter(executor, 2 * Runtime.getRuntime().availableProcessors()).zip(destFile, files);
+    }
+
+    /**
+     * Extract a zip archive to destDir.<br />
+     * Directory entries and nested paths are created below destDir, entries pointing outside of it are rejected.
      *
      * @param zipFile
      * @param destDir
      * @throws IOException
      */
     public static void unzip(File zipFile, File destDir) throws IOException {
-        BufferedOutputStream dest;
-        FileInputStream fis = new FileInputStream(zipFile);
-        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(fis))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Extracting: " + entry);
-                }
-                int count;
-                byte[] data = new byte[BUFFER_SIZE];
-                FileOutputStream fos = new FileOutputStream(destDir.getAbsolutePath() + "/" + entry.getName());
-                dest = new BufferedOutputStream(fos, BUFFER_SIZE);
-                while ((count = zis.read(data, 0, BUFFER_SIZE)) != -1) {
-                    dest.write(data, 0, count);
-                }
-                dest.flush();
-                dest.close();
-            }
-        }
+        new ZipExtractor(null).extract(zipFile, destDir);
+    }
+
+    /**
+     * Extract a zip archive to destDir, extracting the entries concurrently.<br />
+     * All directories are created first, entries pointing outside of destDir are rejected before anything is written.
+     *
+     * @param zipFile
+     * @param destDir
+     * @param executor runs the extraction of the single entries
+     * @throws IOException
+     */
+    public static void unzip(File zipFile, File destDir, ExecutorService executor) throws IOException {
+        new ZipExtractor(executor).extract(zipFile, destDir);
     }
 
     /**
@@ -177,10 +380,7 @@ public final class FileHelper {
                 crc32digest.update(buffer, 0, i);
             }
         }
-        String rawtext = "00000000" + Long.toHexString(crc32digest.getValue());
-        String crc32 = rawtext.substring(rawtext.length() - 8);
-
-        return crc32.toUpperCase();
+        return HexHelper.toHex((int) crc32digest.getValue());
     }
 
     /**
@@ -207,6 +407,20 @@ public final class FileHelper {
         return getChecksum(file, MessageDigest.getInstance("SHA1"));
     }
 
+    /**
+     * Compute several checksums of a file reading it only once.
+     *
+     * @param file
+     * @param algorithms names of the checksums, e.g. {@link MultiDigest#CRC32} or {@link MultiDigest#SHA256}
+     * @return hexadecimal strings by algorithm name
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     * @see MultiDigest
+     */
+    public static Map<String, String> getChecksums(File file, String... algorithms) throws IOException, NoSuchAlgorithmException {
+        return MultiDigest.digest(file, algorithms);
+    }
+
     private static String getChecksum(File file, MessageDigest messageDigest) throws IOException {
         try (FileInputStream input = new FileInputStream(file)) {
             byte[] buffer = new byte[BUFFER_SIZE];
@@ -224,20 +438,10 @@ public final class FileHelper {
      *
      * @param raw
      * @return
+     * @see HexHelper
      */
     public static String formatHexBytes(byte[] raw) {
-        StringBuffer buffer;
-        final char[] hexDigits = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
-        int i;
-        int value;
-
-        buffer = new StringBuffer(raw.length * 2);
-        for (i = 0; i < raw.length; i++) {
-            value = raw[i];
-            buffer.append(hexDigits[(value >> 4) & 0x0F]);
-            buffer.append(hexDigits[value & 0x0F]);
-        }
-        return buffer.toString();
+        return HexHelper.toHex(raw);
     }
 
 }
@@ -0,0 +1,163 @@
+package org.schalm.util.helper.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Cursor over the lines of a text source, decoding it in chunks.<br />
+ * Lines are terminated by <code>\n</code>, <code>\r\n</code> or <code>\r</code>. The buffers are allocated once and
+ * reused, so the content is never held in memory as a whole:
+ *
+ * <pre>
+ * try (LineReader reader = FileHelper.openLines(file, charset)) {
+ *     while (reader.next()) {
+ *         CharSequence line = reader.line();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class LineReader implements Closeable {
+    private static final int MIN_BUFFER_SIZE = 16; // enough for any multi-byte sequence
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private final StringBuilder line = new StringBuilder(128);
+    private boolean endOfInput = false;
+    private boolean flushed = false;
+    private boolean skipLF = false;
+    private long lineNumber = 0;
+
+    /**
+     * Creates a new reader with a buffer of 64 KB.
+     *
+     * @param channel the source to read from, closed together with this reader
+     * @param charset the encoding of the source
+     */
+    public LineReader(ReadableByteChannel channel, Charset charset) {
+        this(channel, charset, FileHelper.BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new reader.
+     *
+     * @param channel the source to read from, closed together with this reader
+     * @param charset the encoding of the source
+     * @param bufferSize size of the byte and char buffers; must be positive, smaller sizes than 16 are raised to 16,
+     * so a buffer always holds a complete multi-byte sequence
+     * @throws IllegalArgumentException if bufferSize is not positive
+     */
+    public LineReader(ReadableByteChannel channel, Charset charset, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.channel = channel;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(Math.max(bufferSize, MIN_BUFFER_SIZE));
+        this.chars = CharBuffer.allocate(Math.max(bufferSize, MIN_BUFFER_SIZE));
+        this.chars.flip();
+    }
+
+    /**
+     * Advances to the next line.
+     *
+     * @return true, if there is a next line, false at the end of input
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        line.setLength(0);
+        boolean inLine = false;
+        while (true) {
+            if (!chars.hasRemaining() && !fill()) {
+                if (inLine) {
+                    lineNumber++;
+                }
+                return inLine;
+            }
+            final char[] array = chars.array();
+            int start = chars.position();
+            final int end = chars.limit();
+            if (skipLF) {
+                skipLF = false;
+                if (array[start] == '\n') {
+                    start++;
+                }
+            }
+            for (int i = start; i < end; i++) {
+                char c = array[i];
+                if (c == '\n' || c == '\r') {
+                    line.append(array, start, i - start);
+                    chars.position(i + 1);
+                    skipLF = c == '\r';
+                    lineNumber++;
+                    return true;
+                }
+            }
+            if (end > start) {
+                line.append(array, start, end - start);
+                inLine = true;
+            }
+            chars.position(end);
+        }
+    }
+
+    /**
+     * The current line without its terminator.<br />
+     * The returned sequence is reused and only valid until the next call of {@link #next()}.
+     *
+     * @return the current line
+     */
+    public CharSequence line() {
+        return line;
+    }
+
+    /**
+     * The number of the current line, starting with 1.
+     *
+     * @return the current line number or 0 before the first call of {@link #next()}
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean fill() throws IOException {
+        if (flushed) {
+            return false;
+        }
+        chars.clear();
+        while (chars.position() == 0) {
+            if (!endOfInput && channel.read(bytes) == -1) {
+                endOfInput = true;
+            }
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            bytes.compact();
+            if (endOfInput && result.isUnderflow()) {
+                decoder.flush(chars);
+                flushed = true;
+                break;
+            }
+        }
+        chars.flip();
+
+        return chars.hasRemaining();
+    }
+
+}
@@ -0,0 +1,431 @@
+package org.schalm.util.helper.file;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes a checksum manifest of all regular files in a directory tree.<br />
+ * Every line of the manifest holds the size, modification time, the checksums and the path of a file relative to the
+ * root directory, separated by tabs. The lines are sorted by path, comparing the path names element by element. Files
+ * are hashed concurrently, but only a bounded number of them ahead of the line written last, so memory use does not
+ * depend on the size of the tree.<br />
+ * In incremental mode the checksums of a previous manifest are reused for files whose size and modification time are
+ * unchanged.
+ *
+ * @version $Id$
+ */
+public final class ManifestBuilder {
+    private static final Log log = LogFactory.getLog(ManifestBuilder.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String HEADER_PREFIX = "# size\tmtime\t";
+    private static final String HEADER_SUFFIX = "\tpath";
+    private static final char SEPARATOR = '\t';
+    /**
+     * Orders relative paths with '/' separators element by element, which is the order of a depth-first walk visiting
+     * the entries of every directory sorted by name.
+     */
+    static final Comparator<String> PATH_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String path1, String path2) {
+            int length = Math.min(path1.length(), path2.length());
+            for (int i = 0; i < length; i++) {
+                char c1 = path1.charAt(i);
+                char c2 = path2.charAt(i);
+                if (c1 != c2) {
+                    if (c1 == '/') {
+                        return -1;
+                    }
+                    if (c2 == '/') {
+                        return 1;
+                    }
+                    return c1 - c2;
+                }
+            }
+            return path1.length() - path2.length();
+        }
+    };
+    private final ExecutorService executor;
+    private final String[] algorithms;
+    private final int window;
+    private long filesHashed;
+    private long filesReused;
+
+    /**
+     * Creates a new builder.
+     *
+     * @param executor runs the computation of the checksums
+     * @param algorithms names of the checksums as supported by {@link MultiDigest}
+     * @throws NoSuchAlgorithmException if an algorithm is not available
+     */
+    public ManifestBuilder(ExecutorService executor, String... algorithms) throws NoSuchAlgorithmException {
+        new MultiDigest(algorithms); // fail early on unknown algorithms
+        for (String algorithm : algorithms) {
+            if (algorithm.indexOf(SEPARATOR) >= 0) {
+                throw new NoSuchAlgorithmException("Invalid algorithm name: " + algorithm);
+            }
+        }
+        this.executor = executor;
+        this.algorithms = algorithms.clone();
+        this.window = 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Write the manifest of a directory tree, hashing every file.
+     *
+     * @param root the directory to walk
+     * @param manifest the file to write, replaced atomically when complete
+     * @throws IOException
+     */
+    public void build(File root, File manifest) throws IOException {
+        build(root, manifest, null);
+    }
+
+    /**
+     * Write the manifest of a directory tree, reusing the checksums of unchanged files from a previous manifest.
+     *
+     * @param root the directory to walk
+     * @param manifest the file to write, replaced atomically when complete; may be the same as previous
+     * @param previous a manifest written by this class with the same algorithms or null to hash every file
+     * @throws NotDirectoryException if root is not a directory
+     * @throws IOException if a file cannot be read or previous has a different format
+     */
+    public void build(File root, File manifest, File previous) throws IOException {
+        if (!Files.isDirectory(root.toPath())) {
+            throw new NotDirectoryException(root.toString());
+        }
+        filesHashed = 0;
+        filesReused = 0;
+        Path target = manifest.toPath().toAbsolutePath().normalize();
+        // created with the default permissions, unlike Files.createTempFile
+        Path temp = FileHelper.createTempSibling(manifest).toPath();
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, UTF8);
+                    PreviousManifest old = previous != null ? new PreviousManifest(previous) : null) {
+                writer.write(header());
+                writer.write('\n');
+                Walk walk = new Walk(writer, old, target, temp);
+                boolean complete = false;
+                try {
+                    walk.directory(root.toPath().toAbsolutePath().normalize(), "");
+                    while (!walk.pending.isEmpty()) {
+                        walk.writeNext();
+                    }
+                    complete = true;
+                } finally {
+                    if (!complete) {
+                        // the tasks still running must not read files after the build has failed
+                        walk.failed.set(true);
+                        awaitTermination(walk.pending);
+                    }
+                }
+            }
+            FileHelper.replaceFile(temp.toFile(), target.toFile());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Manifest " + manifest + " written, " + filesHashed + " files hashed, " + filesReused + " reused");
+        }
+    }
+
+    /**
+     * The number of files hashed by the last build.
+     *
+     * @return number of files
+     */
+    public long getFilesHashed() {
+        return filesHashed;
+    }
+
+    /**
+     * The number of files whose checksums were taken from the previous manifest in the last build.
+     *
+     * @return number of files
+     */
+    public long getFilesReused() {
+        return filesReused;
+    }
+
+    private String header() {
+        StringBuilder header = new StringBuilder(HEADER_PREFIX);
+        for (int i = 0; i < algorithms.length; i++) {
+            if (i > 0) {
+                header.append(SEPARATOR);
+            }
+            header.append(algorithms[i]);
+        }
+
+        return header.append(HEADER_SUFFIX).toString();
+    }
+
+    private static Map<String, String> await(Future<Map<String, String>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for checksum computation", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error computing checksum: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Wait for the hash tasks of entries not written yet, ignoring their results.
+     */
+    private static void awaitTermination(Iterable<Entry> entries) {
+        boolean interrupted = false;
+        for (Entry entry : entries) {
+            if (entry.future == null) {
+                continue;
+            }
+            while (true) {
+                try {
+                    entry.future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * State of a single build: the files hashed ahead of the writer and the position in the previous manifest.
+     */
+    private class Walk {
+        private final Writer writer;
+        private final PreviousManifest previous;
+        private final Path manifest;
+        private final Path temp;
+        private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        Walk(Writer writer, PreviousManifest previous, Path manifest, Path temp) {
+            this.writer = writer;
+            this.previous = previous;
+            this.manifest = manifest;
+            this.temp = temp;
+        }
+
+        /**
+         * Visit the entries of a directory sorted by name, descending into subdirectories.
+         */
+        void directory(Path directory, String prefix) throws IOException {
+            for (Child child : list(directory)) {
+                String relative = prefix + child.name;
+                if (child.attributes.isDirectory()) {
+                    directory(child.path, relative + '/');
+                } else if (child.attributes.isRegularFile() && !child.path.equals(manifest) && !child.path.equals(temp)) {
+                    file(child.path, relative, child.attributes);
+                }
+            }
+        }
+
+        private void file(Path path, String relative, BasicFileAttributes attributes) throws IOException {
+            Entry entry = new Entry(relative, attributes.size(), attributes.lastModifiedTime().toMillis());
+            if (previous != null) {
+                entry.checksums = previous.lookup(entry);
+            }
+            if (entry.checksums == null) {
+                entry.future = executor.submit(new HashTask(path.toFile(), failed));
+                filesHashed++;
+            } else {
+                filesReused++;
+            }
+            pending.add(entry);
+            while (pending.size() > window) {
+                writeNext();
+            }
+        }
+
+        void writeNext() throws IOException {
+            // removed only after its task has finished, so a failed build still waits for it
+            Entry entry = pending.peek();
+            Map<String, String> checksums = entry.checksums != null ? entry.checksums : await(entry.future);
+            pending.poll();
+            writer.write(Long.toString(entry.size));
+            writer.write(SEPARATOR);
+            writer.write(Long.toString(entry.lastModified));
+            for (String algorithm : algorithms) {
+                writer.write(SEPARATOR);
+                writer.write(checksums.get(algorithm));
+            }
+            writer.write(SEPARATOR);
+            writer.write(entry.path);
+            writer.write('\n');
+        }
+
+    }
+
+    /**
+     * List the entries of a single directory with their attributes, sorted by name.
+     */
+    private static List<Child> list(final Path directory) throws IOException {
+        final List<Child> children = new ArrayList<>();
+        Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (!file.equals(directory)) {
+                    children.add(new Child(file, attributes));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+        Collections.sort(children);
+
+        return children;
+    }
+
+    private class HashTask implements Callable<Map<String, String>> {
+        private final File file;
+        private final AtomicBoolean failed;
+
+        HashTask(File file, AtomicBoolean failed) {
+            this.file = file;
+            this.failed = failed;
+        }
+
+        @Override
+        public Map<String, String> call() throws IOException, NoSuchAlgorithmException {
+            if (failed.get()) {
+                return null;
+            }
+            return MultiDigest.digest(file, algorithms);
+        }
+
+    }
+
+    private static class Child implements Comparable<Child> {
+        private final Path path;
+        private final String name;
+        private final BasicFileAttributes attributes;
+
+        Child(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.name = path.getFileName().toString();
+            this.attributes = attributes;
+        }
+
+        @Override
+        public int compareTo(Child other) {
+            return name.compareTo(other.name);
+        }
+
+    }
+
+    private static class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private Map<String, String> checksums;
+        private Future<Map<String, String>> future;
+
+        Entry(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+    }
+
+    /**
+     * Reads a previous manifest in step with the walk, which visits the files in the same order.
+     */
+    private class PreviousManifest implements AutoCloseable {
+        private final LineReader reader;
+        private final File file;
+        private String[] current;
+
+        PreviousManifest(File file) throws IOException {
+            this.file = file;
+            this.reader = FileHelper.openLines(file, UTF8);
+            if (!reader.next() || !header().contentEquals(reader.line())) {
+                reader.close();
+                throw new IOException("Manifest " + file + " was not written with the algorithms " + Arrays.toString(algorithms));
+            }
+            advance();
+        }
+
+        private void advance() throws IOException {
+            current = null;
+            if (reader.next()) {
+                current = reader.line().toString().split(String.valueOf(SEPARATOR), algorithms.length + 3);
+                if (current.length != algorithms.length + 3) {
+                    throw new IOException("Invalid entry in line " + reader.getLineNumber() + " of " + file);
+                }
+            }
+        }
+
+        /**
+         * Get the previous checksums of an unchanged file.
+         *
+         * @return the checksums or null, if the file is new or has changed
+         */
+        Map<String, String> lookup(Entry entry) throws IOException {
+            int order = 1;
+            while (current != null && (order = PATH_ORDER.compare(current[current.length - 1], entry.path)) < 0) {
+                advance();
+            }
+            if (order != 0) {
+                return null;
+            }
+            Map<String, String> checksums = null;
+            try {
+                if (Long.parseLong(current[0]) == entry.size && Long.parseLong(current[1]) == entry.lastModified) {
+                    checksums = new LinkedHashMap<>();
+                    for (int i = 0; i < algorithms.length; i++) {
+                        checksums.put(algorithms[i], current[i + 2]);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid entry in line " + reader.getLineNumber() + " of " + file, e);
+            }
+            advance();
+
+            return checksums;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+    }
+
+}
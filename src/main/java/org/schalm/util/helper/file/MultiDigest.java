@@ -0,0 +1,396 @@
+package org.schalm.util.helper.file;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import org.schalm.util.helper.string.HexHelper;
+
+/**
+ * Computes several checksums and message digests over the same data in one pass.<br />
+ * Supported algorithms are {@link #CRC32}, {@link #CRC32C} (needs Java 9 or later), {@link #MD5}, {@link #SHA1},
+ * {@link #SHA256} and every other <code>MessageDigest</code> algorithm of the installed providers. Results are
+ * formatted as upper case hexadecimal strings like in {@link FileHelper#getMD5(File)}.
+ *
+ * @version $Id$
+ */
+public final class MultiDigest {
+    public static final String CRC32 = "CRC32";
+    public static final String CRC32C = "CRC32C";
+    public static final String MD5 = "MD5";
+    public static final String SHA1 = "SHA-1";
+    public static final String SHA256 = "SHA-256";
+    /**
+     * Chunk size of {@link #treeDigest(File, ExecutorService, String...)} (64 MB).
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 0x4000000;
+    private static final long CRC32_POLYNOMIAL = 0xEDB88320L;
+    private static final long CRC32C_POLYNOMIAL = 0x82F63B78L;
+    private final String[] algorithms;
+    private final Checksum[] checksums;
+    private final MessageDigest[] digests;
+    private long length = 0;
+
+    /**
+     * Creates a new digest computing all given algorithms.
+     *
+     * @param algorithms the names of the algorithms
+     * @throws NoSuchAlgorithmException if an algorithm is not available
+     */
+    public MultiDigest(String... algorithms) throws NoSuchAlgorithmException {
+        if (algorithms.length == 0) {
+            throw new IllegalArgumentException("At least one algorithm is required");
+        }
+        this.algorithms = algorithms.clone();
+        this.checksums = new Checksum[algorithms.length];
+        this.digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            if (CRC32.equalsIgnoreCase(algorithms[i])) {
+                checksums[i] = new CRC32();
+            } else if (CRC32C.equalsIgnoreCase(algorithms[i])) {
+                checksums[i] = newCRC32C();
+            } else {
+                digests[i] = MessageDigest.getInstance(algorithms[i]);
+            }
+        }
+    }
+
+    private static Checksum newCRC32C() throws NoSuchAlgorithmException {
+        try {
+            return (Checksum) Class.forName("java.util.zip.CRC32C").newInstance();
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+            throw new NoSuchAlgorithmException("CRC32C is not available in this runtime", e);
+        }
+    }
+
+    /**
+     * Updates all algorithms with the given bytes.
+     *
+     * @param input
+     * @param offset
+     * @param len
+     */
+    public void update(byte[] input, int offset, int len) {
+        for (int i = 0; i < algorithms.length; i++) {
+            if (checksums[i] != null) {
+                checksums[i].update(input, offset, len);
+            } else {
+                digests[i].update(input, offset, len);
+            }
+        }
+        length += len;
+    }
+
+    /**
+     * The number of bytes processed so far.
+     *
+     * @return the number of bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Completes the computation and resets all algorithms.
+     *
+     * @return the hexadecimal values by algorithm name in the order given to the constructor
+     */
+    public Map<String, String> digest() {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < algorithms.length; i++) {
+            result.put(algorithms[i], format(rawValue(i)));
+        }
+        length = 0;
+
+        return result;
+    }
+
+    /**
+     * Completes the computation for one algorithm: the checksum value as <code>Long</code> or the digest as
+     * <code>byte[]</code>.
+     */
+    private Object rawValue(int i) {
+        if (checksums[i] != null) {
+            long value = checksums[i].getValue();
+            checksums[i].reset();
+            return value;
+        }
+        return digests[i].digest();
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Long) {
+            return HexHelper.toHex(((Long) value).intValue());
+        }
+        return HexHelper.toHex((byte[]) value);
+    }
+
+    /**
+     * Compute the given checksums and digests of a file in a single read.
+     *
+     * @param file
+     * @param algorithms the names of the algorithms
+     * @return the hexadecimal values by algorithm name
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public static Map<String, String> digest(File file, String... algorithms) throws IOException, NoSuchAlgorithmException {
+        MultiDigest digest = new MultiDigest(algorithms);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            digest.update(channel, 0, channel.size(), ByteBuffer.allocate(FileHelper.BUFFER_SIZE));
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Update all algorithms with a range of a file.
+     *
+     * @throws EOFException if the file ends before the range, for example because it has been truncated meanwhile
+     */
+    private void update(FileChannel channel, long position, long count, ByteBuffer buffer) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            buffer.clear();
+            if (end - position < buffer.capacity()) {
+                buffer.limit((int) (end - position));
+            }
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("File ended at " + position + " before " + end);
+            }
+            update(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    /**
+     * Compute the given checksums and digests of a file in chunks of {@link #DEFAULT_CHUNK_SIZE} that are processed
+     * concurrently, see {@link #treeDigest(File, long, ExecutorService, String...)}.
+     *
+     * @param file
+     * @param executor runs the computation of the single chunks
+     * @param algorithms the names of the algorithms
+     * @return the hexadecimal values by algorithm name
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public static Map<String, String> treeDigest(File file, ExecutorService executor, String... algorithms)
+            throws IOException, NoSuchAlgorithmException {
+        return treeDigest(file, DEFAULT_CHUNK_SIZE, executor, algorithms);
+    }
+
+    /**
+     * Compute the given checksums and digests of a file by splitting it into chunks that are processed concurrently.
+     * <br />
+     * CRC32 and CRC32C values of the chunks are combined to exactly the value of a sequential computation. For message
+     * digests the result is the digest over the concatenated digests of all chunks (a hash list), so these values
+     * depend on the chunk size and differ from {@link #digest(File, String...)}.
+     *
+     * @param file
+     * @param chunkSize number of bytes per chunk
+     * @param executor runs the computation of the single chunks
+     * @param algorithms the names of the algorithms
+     * @return the hexadecimal values by algorithm name
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public static Map<String, String> treeDigest(File file, long chunkSize, ExecutorService executor, String... algorithms)
+            throws IOException, NoSuchAlgorithmException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        MultiDigest top = new MultiDigest(algorithms);
+        List<Future<Object[]>> futures = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            boolean complete = false;
+            try {
+                do {
+                    long count = Math.min(chunkSize, size - position);
+                    futures.add(executor.submit(new ChunkTask(channel, position, count, algorithms, failed)));
+                    position += chunkSize;
+                } while (position < size);
+                List<Object[]> chunks = new ArrayList<>(futures.size());
+                for (Future<Object[]> future : futures) {
+                    chunks.add(await(future));
+                }
+                complete = true;
+                return top.combine(chunks, chunkSize, size);
+            } finally {
+                if (!complete) {
+                    // not interrupted, as that would close the channel, but waited for before the channel is closed
+                    failed.set(true);
+                    awaitTermination(futures);
+                }
+            }
+        }
+    }
+
+    private Map<String, String> combine(List<Object[]> chunks, long chunkSize, long size) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < algorithms.length; i++) {
+            if (checksums[i] != null) {
+                long polynomial = checksums[i] instanceof CRC32 ? CRC32_POLYNOMIAL : CRC32C_POLYNOMIAL;
+                long crc = 0;
+                long remaining = size;
+                for (Object[] chunk : chunks) {
+                    long chunkLength = Math.min(chunkSize, remaining);
+                    crc = combineCrc(crc, (Long) chunk[i], chunkLength, polynomial);
+                    remaining -= chunkLength;
+                }
+                result.put(algorithms[i], format(crc));
+            } else {
+                for (Object[] chunk : chunks) {
+                    digests[i].update((byte[]) chunk[i]);
+                }
+                result.put(algorithms[i], format(digests[i].digest()));
+            }
+        }
+
+        return result;
+    }
+
+    private static Object[] await(Future<Object[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for checksum computation", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error computing checksum: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void awaitTermination(List<Future<Object[]>> futures) {
+        boolean interrupted = false;
+        for (Future<Object[]> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Combines the CRCs of two consecutive blocks to the CRC of both (see crc32_combine of zlib).
+     *
+     * @param crc1 CRC of the first block
+     * @param crc2 CRC of the second block
+     * @param length2 length of the second block
+     * @param polynomial the reversed polynomial of the CRC
+     * @return the CRC of the first block followed by the second
+     */
+    static long combineCrc(long crc1, long crc2, long length2, long polynomial) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        odd[0] = polynomial; // operator for one zero bit
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd); // two zero bits
+        gf2MatrixSquare(odd, even); // four zero bits
+        long len = length2;
+        long crc = crc1;
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((len & 1) != 0) {
+                crc = gf2MatrixTimes(even, crc);
+            }
+            len >>= 1;
+            if (len == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((len & 1) != 0) {
+                crc = gf2MatrixTimes(odd, crc);
+            }
+            len >>= 1;
+        } while (len != 0);
+
+        return crc ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        long vec = vector;
+        for (int i = 0; vec != 0; i++, vec >>>= 1) {
+            if ((vec & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+
+    private static class ChunkTask implements Callable<Object[]> {
+        private final FileChannel channel;
+        private final long position;
+        private final long count;
+        private final String[] algorithms;
+        private final AtomicBoolean failed;
+
+        ChunkTask(FileChannel channel, long position, long count, String[] algorithms, AtomicBoolean failed) {
+            this.channel = channel;
+            this.position = position;
+            this.count = count;
+            this.algorithms = algorithms;
+            this.failed = failed;
+        }
+
+        @Override
+        public Object[] call() throws IOException, NoSuchAlgorithmException {
+            if (failed.get()) {
+                return null;
+            }
+            MultiDigest digest = new MultiDigest(algorithms);
+            digest.update(channel, position, count, ByteBuffer.allocate(FileHelper.BUFFER_SIZE));
+            Object[] values = new Object[algorithms.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = digest.rawValue(i);
+            }
+            return values;
+        }
+
+    }
+
+}
@@ -0,0 +1,389 @@
+package org.schalm.util.helper.file;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes a zip archive whose entries are deflated concurrently.<br />
+ * Every file is compressed by a task on the given executor into memory or, for large files, into a temporary file.
+ * The calling thread writes the results in the original order together with their local headers and finally the
+ * central directory. The number of entries compressed ahead of the writer is bounded to limit memory use. If the
+ * archive cannot be written, the tasks not yet started are skipped and the running ones are waited for before their
+ * deflaters are released.
+ *
+ * @version $Id$
+ */
+final class ParallelZipWriter {
+    private static final Log log = LogFactory.getLog(ParallelZipWriter.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * Files larger than this are compressed into a temporary file instead of memory (8 MB).
+     */
+    static final long IN_MEMORY_LIMIT = 0x800000;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+    private final ExecutorService executor;
+    private final int window;
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private volatile boolean aborted = false;
+
+    /**
+     * Creates a new writer.
+     *
+     * @param executor runs the compression tasks
+     * @param window maximum number of entries compressed ahead of the writer
+     */
+    ParallelZipWriter(ExecutorService executor, int window) {
+        this.executor = executor;
+        this.window = Math.max(window, 1);
+    }
+
+    /**
+     * Create a new zip archive including the files given. Directories are skipped.
+     *
+     * @param destFile
+     * @param files
+     * @throws IOException
+     */
+    void zip(File destFile, File[] files) throws IOException {
+        List<File> regularFiles = new ArrayList<>(files.length);
+        Set<String> names = new HashSet<>();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Skipping directory: " + file);
+                }
+                continue;
+            }
+            if (!names.add(file.getName())) {
+                throw new ZipException("duplicate entry: " + file.getName());
+            }
+            regularFiles.add(file);
+        }
+        if (regularFiles.size() > MAX_ENTRIES) {
+            throw new ZipException("Too many entries for a zip archive without ZIP64 extensions: " + regularFiles.size());
+        }
+
+        ArrayDeque<Future<CompressedEntry>> pending = new ArrayDeque<>(window);
+        List<CompressedEntry> written = new ArrayList<>(regularFiles.size());
+        int next = 0;
+        aborted = false;
+        try (CountingOutputStream out = new CountingOutputStream(
+                new BufferedOutputStream(new FileOutputStream(destFile), FileHelper.BUFFER_SIZE))) {
+            while (next < regularFiles.size() || !pending.isEmpty()) {
+                while (next < regularFiles.size() && pending.size() < window) {
+                    pending.add(executor.submit(new CompressTask(regularFiles.get(next++))));
+                }
+                CompressedEntry entry = await(pending.poll());
+                try {
+                    writeLocalEntry(out, entry);
+                } finally {
+                    entry.release();
+                }
+                written.add(entry);
+            }
+            writeCentralDirectory(out, written);
+            out.flush();
+        } finally {
+            aborted = true;
+            awaitTermination(pending);
+            for (Deflater deflater : deflaters) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Wait until all tasks have finished and free the entries they compressed. A cancelled task might still be
+     * running and using its deflater, so the tasks are stopped by checking {@link #aborted} instead.
+     */
+    private static void awaitTermination(Queue<Future<CompressedEntry>> pending) {
+        boolean interrupted = false;
+        for (Future<CompressedEntry> future : pending) {
+            while (true) {
+                try {
+                    CompressedEntry entry = future.get();
+                    if (entry != null) {
+                        entry.release();
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // compression failed, nothing to clean up
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static CompressedEntry await(Future<CompressedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compression", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error compressing entry: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void writeLocalEntry(CountingOutputStream out, CompressedEntry entry) throws IOException {
+        if (out.getCount() > MAX_SIZE) {
+            throw new ZipException("Archive too large for a zip archive without ZIP64 extensions");
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Adding: " + entry.name);
+        }
+        entry.offset = out.getCount();
+        writeInt(out, LOCAL_HEADER_SIGNATURE);
+        writeShort(out, VERSION);
+        writeShort(out, FLAG_UTF8);
+        writeShort(out, Deflater.DEFLATED);
+        writeInt(out, entry.dosTime);
+        writeInt(out, (int) entry.crc);
+        writeInt(out, (int) entry.compressedSize);
+        writeInt(out, (int) entry.size);
+        writeShort(out, entry.nameBytes.length);
+        writeShort(out, 0);
+        out.write(entry.nameBytes);
+        if (entry.data != null) {
+            out.write(entry.data, 0, entry.data.length);
+        } else {
+            Files.copy(entry.tempFile.toPath(), out);
+        }
+    }
+
+    private void writeCentralDirectory(CountingOutputStream out, List<CompressedEntry> entries) throws IOException {
+        long start = out.getCount();
+        for (CompressedEntry entry : entries) {
+            writeInt(out, CENTRAL_HEADER_SIGNATURE);
+            writeShort(out, VERSION);
+            writeShort(out, VERSION);
+            writeShort(out, FLAG_UTF8);
+            writeShort(out, Deflater.DEFLATED);
+            writeInt(out, entry.dosTime);
+            writeInt(out, (int) entry.crc);
+            writeInt(out, (int) entry.compressedSize);
+            writeInt(out, (int) entry.size);
+            writeShort(out, entry.nameBytes.length);
+            writeShort(out, 0); // extra field length
+            writeShort(out, 0); // comment length
+            writeShort(out, 0); // disk number start
+            writeShort(out, 0); // internal attributes
+            writeInt(out, 0); // external attributes
+            writeInt(out, (int) entry.offset);
+            out.write(entry.nameBytes);
+        }
+        long size = out.getCount() - start;
+        if (start > MAX_SIZE || size > MAX_SIZE) {
+            throw new ZipException("Archive too large for a zip archive without ZIP64 extensions");
+        }
+        writeInt(out, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        writeShort(out, 0); // number of this disk
+        writeShort(out, 0); // disk with the central directory
+        writeShort(out, entries.size());
+        writeShort(out, entries.size());
+        writeInt(out, (int) size);
+        writeInt(out, (int) start);
+        writeShort(out, 0); // comment length
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        writeShort(out, value);
+        writeShort(out, value >>> 16);
+    }
+
+    /**
+     * Converts a java timestamp to the MS-DOS date and time format used in zip headers.
+     *
+     * @param time milliseconds since the epoch
+     * @return the date in the upper and the time in the lower 16 bits
+     */
+    static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16); // 01.01.1980
+        }
+        return (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private byte[] borrowBuffer() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[FileHelper.BUFFER_SIZE];
+    }
+
+    private Deflater borrowDeflater() {
+        Deflater deflater = deflaters.poll();
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    private class CompressTask implements Callable<CompressedEntry> {
+        private final File file;
+
+        CompressTask(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public CompressedEntry call() throws IOException {
+            if (aborted) {
+                return null;
+            }
+            CompressedEntry entry = new CompressedEntry(file.getName(), toDosTime(file.lastModified()));
+            byte[] buffer = borrowBuffer();
+            Deflater deflater = borrowDeflater();
+            ByteArrayOutputStream memory = null;
+            CRC32 crc = new CRC32();
+            long size = 0;
+            // the input is opened first, so no temporary file is left behind if it cannot be read
+            try (FileInputStream input = new FileInputStream(file)) {
+                OutputStream target;
+                if (file.length() > IN_MEMORY_LIMIT) {
+                    entry.tempFile = File.createTempFile("zip", ".deflated");
+                    target = new FileOutputStream(entry.tempFile);
+                } else {
+                    memory = new ByteArrayOutputStream((int) Math.max(file.length() / 2, 32));
+                    target = memory;
+                }
+                try (DeflaterOutputStream out = new DeflaterOutputStream(target, deflater, FileHelper.BUFFER_SIZE)) {
+                    int count;
+                    while ((count = input.read(buffer, 0, buffer.length)) != -1) {
+                        crc.update(buffer, 0, count);
+                        out.write(buffer, 0, count);
+                        size += count;
+                    }
+                    out.finish();
+                    entry.compressedSize = deflater.getBytesWritten();
+                }
+            } catch (IOException e) {
+                entry.release();
+                throw e;
+            } finally {
+                deflater.reset();
+                deflaters.add(deflater);
+                buffers.add(buffer);
+            }
+            if (size > MAX_SIZE || entry.compressedSize > MAX_SIZE) {
+                entry.release();
+                throw new ZipException("File too large for a zip archive without ZIP64 extensions: " + file);
+            }
+            entry.size = size;
+            entry.crc = crc.getValue();
+            if (memory != null) {
+                entry.data = memory.toByteArray();
+            }
+
+            return entry;
+        }
+
+    }
+
+    private static class CompressedEntry {
+        private final String name;
+        private final byte[] nameBytes;
+        private final int dosTime;
+        private long crc;
+        private long size;
+        private long compressedSize;
+        private long offset;
+        private byte[] data;
+        private File tempFile;
+
+        CompressedEntry(String name, int dosTime) {
+            this.name = name;
+            this.nameBytes = name.getBytes(UTF8);
+            this.dosTime = dosTime;
+        }
+
+        /**
+         * Frees the compressed data, which is not needed after the entry has been written.
+         */
+        void release() {
+            data = null;
+            if (tempFile != null) {
+                if (!tempFile.delete()) {
+                    tempFile.deleteOnExit();
+                }
+                tempFile = null;
+            }
+        }
+
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+    }
+
+}
@@ -0,0 +1,146 @@
+package org.schalm.util.helper.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.schalm.util.helper.cache.LruCache;
+
+/**
+ * Loads classpath resources and keeps the most recently used ones in memory.<br />
+ * A resource is read into an array of its size in one go, if the size is known, and decoded with an explicit charset.
+ * The results are immutable, so they are shared between all callers. Instances are thread-safe.
+ *
+ * @version $Id$
+ */
+public final class ResourceLoader {
+    private static final Log log = LogFactory.getLog(ResourceLoader.class);
+    private final ClassLoader classLoader;
+    private final LruCache<String, ByteBuffer> bytes;
+    private final LruCache<String, String> texts;
+
+    /**
+     * Creates a new loader.
+     *
+     * @param classLoader loads the resources
+     * @param maxEntries maximum number of resources kept in memory, for raw bytes and decoded texts each
+     */
+    public ResourceLoader(ClassLoader classLoader, int maxEntries) {
+        this.classLoader = classLoader;
+        this.bytes = new LruCache<>(maxEntries);
+        this.texts = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Get the content of a resource.
+     *
+     * @param name the resource name as for <code>ClassLoader.getResource(String)</code>
+     * @return a read-only buffer with the content
+     * @throws FileNotFoundException if there is no such resource
+     * @throws IOException
+     */
+    public ByteBuffer getBytes(String name) throws IOException {
+        ByteBuffer content = bytes.get(name);
+        if (content == null) {
+            content = ByteBuffer.wrap(read(name)).asReadOnlyBuffer();
+            bytes.put(name, content);
+        }
+
+        return content.duplicate();
+    }
+
+    /**
+     * Get the content of a resource as text.
+     *
+     * @param name the resource name as for <code>ClassLoader.getResource(String)</code>
+     * @param charset the encoding of the resource
+     * @return the decoded content, line endings are kept as they are
+     * @throws FileNotFoundException if there is no such resource
+     * @throws IOException
+     */
+    public String getText(String name, Charset charset) throws IOException {
+        String key = charset.name() + ':' + name;
+        String text = texts.get(key);
+        if (text == null) {
+            ByteBuffer content = bytes.get(name);
+            if (content != null) {
+                text = charset.decode(content.duplicate()).toString();
+            } else {
+                text = new String(read(name), charset);
+            }
+            texts.put(key, text);
+        }
+
+        return text;
+    }
+
+    /**
+     * Remove all resources from memory.
+     */
+    public void clear() {
+        bytes.clear();
+        texts.clear();
+    }
+
+    private byte[] read(String name) throws IOException {
+        URL url = classLoader.getResource(name);
+        if (url == null) {
+            throw new FileNotFoundException("Resource not found: " + name);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Loading resource: " + url);
+        }
+        URLConnection connection = url.openConnection();
+        int length = connection.getContentLength();
+        try (InputStream input = connection.getInputStream()) {
+            return length >= 0 ? read(input, length) : readFully(input);
+        }
+    }
+
+    /**
+     * Read a stream of known length into an array of that size, checking that the length was right.
+     */
+    private static byte[] read(InputStream input, int length) throws IOException {
+        byte[] content = new byte[length];
+        int position = 0;
+        int count;
+        while (position < length && (count = input.read(content, position, length - position)) != -1) {
+            position += count;
+        }
+        if (position < length) {
+            return Arrays.copyOf(content, position);
+        }
+        int next = input.read();
+        if (next == -1) {
+            return content;
+        }
+        // the length was wrong, continue with a growing buffer
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + FileHelper.BUFFER_SIZE);
+        out.write(content);
+        out.write(next);
+        copy(input, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(FileHelper.BUFFER_SIZE);
+        copy(input, out);
+        return out.toByteArray();
+    }
+
+    private static void copy(InputStream input, ByteArrayOutputStream out) throws IOException {
+        byte[] buffer = new byte[FileHelper.BUFFER_SIZE];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package org.schalm.util.helper.file;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Generates text piece by piece, so it does not have to be held in memory as a whole.
+ *
+ * @version $Id$
+ * @see FileHelper#writeTextFile(java.io.File, java.nio.charset.Charset, boolean, TextProducer)
+ */
+public interface TextProducer {
+
+    /**
+     * Write the complete text.
+     *
+     * @param out receives the text, must not be closed
+     * @throws IOException
+     */
+    void writeTo(Writer out) throws IOException;
+
+}
@@ -0,0 +1,180 @@
+package org.schalm.util.helper.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Extracts a zip archive using its central directory.<br />
+ * All target paths are checked to lie within the destination directory and all directories are created before any
+ * file is written, so the files can be extracted concurrently. An archive containing two entries for the same file is
+ * rejected. If an entry cannot be extracted, the entries not yet started are skipped and the running ones are
+ * waited for, so no task reads the archive after it has been closed.
+ *
+ * @version $Id$
+ */
+final class ZipExtractor {
+    private static final Log log = LogFactory.getLog(ZipExtractor.class);
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new extractor.
+     *
+     * @param executor runs the extraction of the single entries or null to extract on the calling thread
+     */
+    ZipExtractor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Extract a zip archive to destDir, creating nested directories as needed.
+     *
+     * @param zipFile
+     * @param destDir
+     * @throws IOException if reading or writing fails or an entry would be written outside of destDir
+     */
+    void extract(File zipFile, File destDir) throws IOException {
+        Path root = destDir.toPath().toAbsolutePath().normalize();
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            List<ZipEntry> files = new ArrayList<>(zip.size());
+            List<Path> targets = new ArrayList<>(zip.size());
+            Set<Path> directories = new TreeSet<>();
+            Set<Path> fileTargets = new HashSet<>();
+            directories.add(root);
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                Path target = root.resolve(entry.getName()).normalize();
+                if (!target.startsWith(root) || (target.equals(root) && !entry.isDirectory())) {
+                    throw new ZipException("Entry is outside of the target directory: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    directories.add(target);
+                } else {
+                    if (!fileTargets.add(target)) {
+                        throw new ZipException("Duplicate entry: " + entry.getName());
+                    }
+                    directories.add(target.getParent());
+                    files.add(entry);
+                    targets.add(target);
+                }
+            }
+            for (Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+            if (executor == null) {
+                for (int i = 0; i < files.size(); i++) {
+                    new ExtractTask(zip, files.get(i), targets.get(i)).call();
+                }
+            } else {
+                List<Future<Void>> futures = new ArrayList<>(files.size());
+                AtomicBoolean failed = new AtomicBoolean();
+                boolean complete = false;
+                try {
+                    for (int i = 0; i < files.size(); i++) {
+                        futures.add(executor.submit(new ExtractTask(zip, files.get(i), targets.get(i), failed)));
+                    }
+                    for (Future<Void> future : futures) {
+                        await(future);
+                    }
+                    complete = true;
+                } finally {
+                    if (!complete) {
+                        failed.set(true);
+                        awaitTermination(futures);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for extraction", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error extracting entry: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Wait until all tasks have finished, whatever their outcome. A cancelled task might still be running, so the
+     * tasks are stopped by the flag they check instead.
+     */
+    private static void awaitTermination(List<Future<Void>> futures) {
+        boolean interrupted = false;
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class ExtractTask implements Callable<Void> {
+        private final ZipFile zip;
+        private final ZipEntry entry;
+        private final Path target;
+        private final AtomicBoolean failed;
+
+        ExtractTask(ZipFile zip, ZipEntry entry, Path target) {
+            this(zip, entry, target, new AtomicBoolean());
+        }
+
+        ExtractTask(ZipFile zip, ZipEntry entry, Path target, AtomicBoolean failed) {
+            this.zip = zip;
+            this.entry = entry;
+            this.target = target;
+            this.failed = failed;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            if (failed.get()) {
+                return null;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Extracting: " + entry);
+            }
+            try (InputStream input = zip.getInputStream(entry)) {
+                Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+package org.schalm.util.helper.string;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Hexadecimal encoding and decoding without intermediate objects.<br />
+ * Encoding writes upper case digits into a given <code>char[]</code>, <code>ByteBuffer</code> or
+ * <code>Appendable</code>, decoding accepts upper and lower case digits.
+ *
+ * @version $Id$
+ */
+public final class HexHelper {
+	private static final char[] DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+	private static final byte[] VALUES = new byte[128];
+
+	static {
+		for (int i = 0; i < VALUES.length; i++) {
+			VALUES[i] = -1;
+		}
+		for (int i = 0; i < DIGITS.length; i++) {
+			VALUES[DIGITS[i]] = (byte) i;
+			VALUES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+		}
+	}
+
+	private HexHelper() {
+		// utility class
+	}
+
+	/**
+	 * Format a raw array of binary bytes as a hexadecimal string.
+	 *
+	 * @param raw the bytes to encode
+	 * @return two upper case digits per byte
+	 */
+	public static String toHex(byte[] raw) {
+		char[] chars = new char[raw.length * 2];
+		encode(raw, 0, raw.length, chars, 0);
+		return new String(chars);
+	}
+
+	/**
+	 * Format an int as hexadecimal string of eight digits, like a CRC32 value.
+	 *
+	 * @param value the value to encode
+	 * @return eight upper case digits
+	 */
+	public static String toHex(int value) {
+		char[] chars = new char[8];
+		for (int i = 7; i >= 0; i--) {
+			chars[i] = DIGITS[value & 0x0F];
+			value >>>= 4;
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Encode bytes into a char array.
+	 *
+	 * @param src the bytes to encode
+	 * @param srcOffset index of the first byte
+	 * @param length number of bytes
+	 * @param dest receives two digits per byte
+	 * @param destOffset index of the first digit
+	 * @return the index after the last digit written
+	 */
+	public static int encode(byte[] src, int srcOffset, int length, char[] dest, int destOffset) {
+		int j = destOffset;
+		for (int i = srcOffset, end = srcOffset + length; i < end; i++) {
+			int value = src[i];
+			dest[j++] = DIGITS[(value >> 4) & 0x0F];
+			dest[j++] = DIGITS[value & 0x0F];
+		}
+		return j;
+	}
+
+	/**
+	 * Encode bytes as ASCII digits into a buffer.
+	 *
+	 * @param src the bytes to encode
+	 * @param srcOffset index of the first byte
+	 * @param length number of bytes
+	 * @param dest receives two digits per byte at its current position
+	 */
+	public static void encode(byte[] src, int srcOffset, int length, ByteBuffer dest) {
+		for (int i = srcOffset, end = srcOffset + length; i < end; i++) {
+			int value = src[i];
+			dest.put((byte) DIGITS[(value >> 4) & 0x0F]);
+			dest.put((byte) DIGITS[value & 0x0F]);
+		}
+	}
+
+	/**
+	 * Encode bytes and append the digits.
+	 *
+	 * @param src the bytes to encode
+	 * @param srcOffset index of the first byte
+	 * @param length number of bytes
+	 * @param out receives two digits per byte
+	 * @throws IOException if out throws it
+	 */
+	public static void encode(byte[] src, int srcOffset, int length, Appendable out) throws IOException {
+		for (int i = srcOffset, end = srcOffset + length; i < end; i++) {
+			int value = src[i];
+			out.append(DIGITS[(value >> 4) & 0x0F]);
+			out.append(DIGITS[value & 0x0F]);
+		}
+	}
+
+	/**
+	 * Decode a hexadecimal string.
+	 *
+	 * @param hex an even number of digits
+	 * @return the decoded bytes
+	 * @throws IllegalArgumentException if the input has an odd length or contains other characters than digits
+	 */
+	public static byte[] fromHex(CharSequence hex) {
+		if (hex.length() % 2 != 0) {
+			throw new IllegalArgumentException("Odd number of hexadecimal digits: " + hex.length());
+		}
+		byte[] raw = new byte[hex.length() / 2];
+		decode(hex, 0, hex.length(), raw, 0);
+		return raw;
+	}
+
+	/**
+	 * Decode hexadecimal digits into a byte array.
+	 *
+	 * @param hex the digits to decode
+	 * @param start index of the first digit
+	 * @param end index after the last digit, <code>end - start</code> must be even
+	 * @param dest receives one byte per two digits
+	 * @param destOffset index of the first byte
+	 * @return the index after the last byte written
+	 * @throws IllegalArgumentException if the range has an odd length or contains other characters than digits
+	 */
+	public static int decode(CharSequence hex, int start, int end, byte[] dest, int destOffset) {
+		if ((end - start) % 2 != 0) {
+			throw new IllegalArgumentException("Odd number of hexadecimal digits: " + (end - start));
+		}
+		int j = destOffset;
+		for (int i = start; i < end; i += 2) {
+			dest[j++] = (byte) (digit(hex, i) << 4 | digit(hex, i + 1));
+		}
+		return j;
+	}
+
+	private static int digit(CharSequence hex, int index) {
+		char c = hex.charAt(index);
+		int value = c < VALUES.length ? VALUES[c] : -1;
+		if (value < 0) {
+			throw new IllegalArgumentException("Invalid hexadecimal digit '" + c + "' at index " + index);
+		}
+		return value;
+	}
+
+}
@@ -8,6 +8,7 @@ import java.util.Locale;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.schalm.util.helper.file.LineReader;
 
 /**
  * Helper for string operations.
@@ -43,11 +44,46 @@ public final class StringHelper {
 	 * @return true if string only contains blanks and tabs, false if not
 	 */
 	public static boolean isQuasiEmpty(final String input) {
-		if (StringHelper.isEmpty(input)) {
+		return isQuasiEmpty((CharSequence) input);
+	}
+
+	/**
+	 * Check if the given characters contain no word characters [a-zA-Z_0-9].
+	 *
+	 * @param input the characters to be examined
+	 * @return true if input is null or contains no word characters, false if not
+	 */
+	public static boolean isQuasiEmpty(final CharSequence input) {
+		if (input == null) {
 			return true;
 		}
-		String cleaned = input.replaceAll("\\W", ""); // [a-zA-Z_0-9]
-		return isEmpty(cleaned);
+		for (int i = input.length() - 1; i >= 0; i--) {
+			if (isWordCharacter(input.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check if the given range of characters contains no word characters [a-zA-Z_0-9], without copying it.
+	 *
+	 * @param ch the characters to be examined
+	 * @param start index of the first character
+	 * @param length number of characters
+	 * @return true if the range contains no word characters, false if not
+	 */
+	public static boolean isQuasiEmpty(final char[] ch, final int start, final int length) {
+		for (int i = start + length - 1; i >= start; i--) {
+			if (isWordCharacter(ch[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isWordCharacter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
 	}
 
 	/**
@@ -75,6 +111,27 @@ public final class StringHelper {
 		return out.toString();
 	}
 
+	/**
+	 * Copies all lines with visible characters to the output, line by line.<br />
+	 * Only the current line is held in memory, so this works for inputs of any size.
+	 *
+	 * @param in the lines to clean
+	 * @param out receives the remaining lines, each terminated by the platform's line separator
+	 * @return the number of lines written
+	 * @throws IOException
+	 */
+	public static long deleteEmptyRows(final LineReader in, final Appendable out) throws IOException {
+		long written = 0;
+		while (in.next()) {
+			CharSequence row = in.line();
+			if (!StringHelper.isQuasiEmpty(row)) {
+				out.append(row).append(StringHelper.LINE_SEPARATOR);
+				written++;
+			}
+		}
+		return written;
+	}
+
 	/**
 	 * Create a formatted string with the given number of bytes in the highest reasonable unit, like 512 B, 1,3 KB or 2 MB.
 	 *
@@ -26,8 +26,7 @@ public class BufferContentHandler extends DefaultHandler {
 
 	@Override
 	public void characters(char[] ch, int start, int length) throws SAXException {
-		String str = new String(ch, start, length);
-		buffer.append(str);
+		buffer.append(ch, start, length);
 		parent.characters(ch, start, length);
 	}
 
@@ -49,8 +48,7 @@ public class BufferContentHandler extends DefaultHandler {
 
 	@Override
 	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
-		String str = new String(ch, start, length);
-		buffer.append(str);
+		buffer.append(ch, start, length);
 		parent.ignorableWhitespace(ch, start, length);
 	}
 
@@ -0,0 +1,174 @@
+package org.schalm.util.helper.xml;
+
+import java.io.IOException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes a DOM tree to an <code>Appendable</code> in the format of {@link XmlHelper#domTree2String(Node)}.<br />
+ * The tree is walked iteratively along the sibling and parent links, so deep documents cannot overflow the stack,
+ * and every node is written once directly to the output. Text is escaped for <code>&amp;</code>, <code>&lt;</code>
+ * and <code>&gt;</code>, attribute values additionally for <code>&quot;</code>.
+ *
+ * @version $Id$
+ */
+public final class DomSerializer {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private final Appendable out;
+    private boolean breakLine = false;
+
+    private DomSerializer(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * Write a node and all its descendants. A document is written as XML declaration and document element.
+     *
+     * @param node
+     * @param out receives the text
+     * @throws IOException if the output fails
+     */
+    public static void write(Node node, Appendable out) throws IOException {
+        DomSerializer serializer = new DomSerializer(out);
+        if (node.getNodeType() == Node.DOCUMENT_NODE) {
+            out.append("<?xml version=\"1.0\"?>");
+            node = ((Document) node).getDocumentElement();
+            if (node == null) {
+                return;
+            }
+        }
+        serializer.walk(node);
+    }
+
+    /**
+     * Write only the start tag of an element, preceded by a line break like every element.
+     *
+     * @param element
+     * @param out receives the text
+     * @throws IOException if the output fails
+     */
+    static void writeStartTag(Element element, Appendable out) throws IOException {
+        new DomSerializer(out).start(element);
+    }
+
+    /**
+     * Write only the end tag of an element on a new line.
+     *
+     * @param element
+     * @param out receives the text
+     * @throws IOException if the output fails
+     */
+    static void writeEndTag(Element element, Appendable out) throws IOException {
+        DomSerializer serializer = new DomSerializer(out);
+        serializer.breakLine = true;
+        serializer.end(element);
+    }
+
+    private void walk(Node root) throws IOException {
+        Node current = root;
+        while (true) {
+            start(current);
+            Node child = current.getNodeType() == Node.ELEMENT_NODE ? current.getFirstChild() : null;
+            if (child != null) {
+                current = child;
+                continue;
+            }
+            // climb until there is a next sibling
+            while (true) {
+                end(current);
+                if (current == root) {
+                    return;
+                }
+                Node sibling = current.getNextSibling();
+                if (sibling != null) {
+                    current = sibling;
+                    break;
+                }
+                current = current.getParentNode();
+            }
+        }
+    }
+
+    private void start(Node node) throws IOException {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                out.append(LINE_SEPARATOR).append('<').append(node.getNodeName());
+                NamedNodeMap attrs = node.getAttributes();
+                for (int i = 0; i < attrs.getLength(); i++) {
+                    Node attr = attrs.item(i);
+                    out.append(' ').append(attr.getNodeName()).append("=\"");
+                    escape(attr.getNodeValue(), true);
+                    out.append('"');
+                }
+                out.append('>');
+                breakLine = false;
+                break;
+            case Node.ENTITY_REFERENCE_NODE:
+                out.append('&').append(node.getNodeName()).append(';');
+                breakLine = false;
+                break;
+            case Node.CDATA_SECTION_NODE:
+                out.append("<![CDATA[").append(node.getNodeValue()).append("]]>");
+                breakLine = false;
+                break;
+            case Node.TEXT_NODE:
+                escape(node.getNodeValue(), false);
+                breakLine = false;
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                out.append("<?").append(node.getNodeName()).append(' ').append(node.getNodeValue()).append("?>")
+                        .append(LINE_SEPARATOR);
+                break;
+            case Node.COMMENT_NODE:
+                out.append("<!--").append(node.getNodeValue()).append("-->");
+                breakLine = false;
+                break;
+            default:
+                out.append(String.valueOf(node.getNodeValue()));
+                breakLine = false;
+                break;
+        }
+    }
+
+    private void end(Node node) throws IOException {
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            if (breakLine) {
+                out.append(LINE_SEPARATOR);
+            }
+            out.append("</").append(node.getNodeName()).append('>');
+            breakLine = true;
+        }
+    }
+
+    private void escape(String value, boolean attribute) throws IOException {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String entity;
+            switch (value.charAt(i)) {
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                case '"':
+                    entity = attribute ? "&quot;" : null;
+                    break;
+                default:
+                    entity = null;
+                    break;
+            }
+            if (entity != null) {
+                out.append(value, start, i).append(entity);
+                start = i + 1;
+            }
+        }
+        out.append(value, start, value.length());
+    }
+
+}
@@ -16,26 +16,35 @@ import org.xml.sax.helpers.DefaultHandler;
  */
 public class IndentContentHandler extends DefaultHandler {
     private static final String LINE_SEPARATOR = System.getProperty("line.separator");
-    private StringBuffer sb = null;
+    private static final String[] INDENTS = new String[32];
+    private StringBuilder sb = null;
     private int indents;
     private String lastTag = null;
 
+    static {
+        StringBuilder s = new StringBuilder(LINE_SEPARATOR);
+        for (int i = 0; i < INDENTS.length; i++) {
+            INDENTS[i] = s.toString();
+            s.append('\t');
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.xml.sax.ContentHandler#startElement(java.lang.String, java.lang.String, java.lang.String, org.xml.sax.Attributes)
      */
     @Override
     public void startElement(String namespaceURI, String localName, String qName, Attributes atts) throws SAXException {
-        sb.append(indent());
-        sb.append("<").append(qName);
+        indent();
+        sb.append('<').append(qName);
         indents++;
         for (int i = atts.getLength() - 1; i >= 0; i--) {
             String attName = atts.getQName(i);
             String attValue = atts.getValue(i);
             sb.append(LINE_SEPARATOR);
-            sb.append(indent());
-            sb.append(attName).append("=\"").append(attValue).append("\"");
+            indent();
+            sb.append(attName).append("=\"").append(attValue).append('"');
         }
-        sb.append(">");
+        sb.append('>');
         lastTag = qName;
     }
 
@@ -47,9 +56,9 @@ public class IndentContentHandler extends DefaultHandler {
         indents--;
         boolean matchingTag = lastTag != null && qName.equalsIgnoreCase(lastTag);
         if (!matchingTag) {
-            sb.append(indent());
+            indent();
         }
-        sb.append("</").append(qName).append(">");
+        sb.append("</").append(qName).append('>');
         lastTag = null;
     }
 
@@ -59,7 +68,7 @@ public class IndentContentHandler extends DefaultHandler {
     @Override
     public void startDocument() throws SAXException {
         indents = 0;
-        sb = new StringBuffer();
+        sb = new StringBuilder();
     }
 
     /* (non-Javadoc)
@@ -67,10 +76,7 @@ public class IndentContentHandler extends DefaultHandler {
      */
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
-        String str = new String(ch, start, length);
-        if (!StringHelper.isQuasiEmpty(str)) {
-            sb.append(str.trim());
-        }
+        appendTrimmed(ch, start, length);
     }
 
     /* (non-Javadoc)
@@ -85,10 +91,7 @@ public class IndentContentHandler extends DefaultHandler {
      */
     @Override
     public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
-        String str = new String(ch, start, length);
-        if (!StringHelper.isQuasiEmpty(str)) {
-            sb.append(str.trim());
-        }
+        appendTrimmed(ch, start, length);
     }
 
     /* (non-Javadoc)
@@ -107,13 +110,35 @@ public class IndentContentHandler extends DefaultHandler {
         sb.append(name);
     }
 
-    private String indent() {
-        StringBuilder s = new StringBuilder();
-        s.append(IndentContentHandler.LINE_SEPARATOR);
-        for (int i = indents; i > 0; i--) {
-            s.append("\t");
+    /**
+     * Appends the characters without leading and trailing whitespace, unless they contain no word characters.
+     */
+    private void appendTrimmed(char[] ch, int start, int length) {
+        if (StringHelper.isQuasiEmpty(ch, start, length)) {
+            return;
+        }
+        int end = start + length;
+        while (start < end && ch[start] <= ' ') {
+            start++;
+        }
+        while (end > start && ch[end - 1] <= ' ') {
+            end--;
+        }
+        sb.append(ch, start, end - start);
+    }
+
+    /**
+     * Appends a line break and the indentation of the current level.
+     */
+    private void indent() {
+        if (indents < INDENTS.length) {
+            sb.append(INDENTS[Math.max(indents, 0)]);
+        } else {
+            sb.append(INDENTS[INDENTS.length - 1]);
+            for (int i = indents - INDENTS.length + 1; i > 0; i--) {
+                sb.append('\t');
+            }
         }
-        return s.toString();
     }
 
     @Override
@@ -0,0 +1,25 @@
+package org.schalm.util.helper.xml;
+
+import org.w3c.dom.Element;
+
+/**
+ * Processes the records read by a {@link RecordSplitter}, concurrently on the threads of its executor.
+ *
+ * @param <R> the type of the results
+ * @version $Id$
+ */
+public interface RecordProcessor<R> {
+
+    /**
+     * Called once for every record. The element is the document element of its own document, so it may be modified
+     * and is never shared with another call. Use {@link XmlHelper#domTree2String(org.w3c.dom.Node)} for the record as
+     * string or {@link XmlHelper#parse(org.w3c.dom.Node, org.xml.sax.ContentHandler)} for SAX events.
+     *
+     * @param record the record
+     * @param index the position of the record in the file, starting with 0
+     * @return the result passed to the {@link RecordSink}
+     * @throws Exception to abort the processing of the file
+     */
+    R process(Element record, long index) throws Exception;
+
+}
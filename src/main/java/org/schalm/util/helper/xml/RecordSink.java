@@ -0,0 +1,22 @@
+package org.schalm.util.helper.xml;
+
+import java.io.IOException;
+
+/**
+ * Receives the results of a {@link RecordProcessor}, one at a time on the thread reading the file.
+ *
+ * @param <R> the type of the results
+ * @version $Id$
+ */
+public interface RecordSink<R> {
+
+    /**
+     * Called for the result of every record, in the order of the records in the file if the {@link RecordSplitter}
+     * preserves the order, otherwise as the results become available.
+     *
+     * @param result the result of the processor
+     * @throws IOException to abort the processing of the file
+     */
+    void accept(R result) throws IOException;
+
+}
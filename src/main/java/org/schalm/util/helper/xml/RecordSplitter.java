@@ -0,0 +1,275 @@
+package org.schalm.util.helper.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.schalm.util.helper.file.ChannelTextWriter;
+import org.w3c.dom.Element;
+
+/**
+ * Splits a file consisting of a document element with many records as children into the single records.<br />
+ * The file is read as a stream with an {@link XmlPullReader}, and only the records currently being processed are held
+ * in memory, each as a small DOM of its own. The records are processed concurrently by a {@link RecordProcessor} on
+ * the threads of the given executor, with at most a bounded number of records queued ahead of the result passed to
+ * the {@link RecordSink} last. Alternatively the records can be written to shard files of a given size.
+ * <pre>
+ * RecordSplitter splitter = new RecordSplitter(executor, "record");
+ * splitter.process(file, processor, sink);
+ * </pre>
+ *
+ * @version $Id$
+ */
+public final class RecordSplitter {
+    private static final Log log = LogFactory.getLog(RecordSplitter.class);
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final String EXTENSION = ".xml";
+    private final ExecutorService executor;
+    private final String recordName;
+    private final int window;
+    private boolean preserveOrder = true;
+
+    /**
+     * Creates a new splitter.
+     *
+     * @param executor runs the processing of the records
+     * @param recordName the qualified name of the records or null to treat every child of the document element as
+     * record; other children are skipped
+     */
+    public RecordSplitter(ExecutorService executor, String recordName) {
+        this.executor = executor;
+        this.recordName = recordName;
+        this.window = 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Whether the sink receives the results in the order of the records, which is the default. Otherwise results
+     * are passed on as soon as they are available, so a slow record does not hold back the others.
+     *
+     * @param preserveOrder
+     */
+    public void setPreserveOrder(boolean preserveOrder) {
+        this.preserveOrder = preserveOrder;
+    }
+
+    /**
+     * Process all records of a file.
+     *
+     * @param <R> the type of the results
+     * @param input
+     * @param processor called concurrently for every record
+     * @param sink receives the results on the calling thread, may be null
+     * @return the number of records
+     * @throws IOException if the file cannot be read, a record cannot be processed or the processing was interrupted
+     * @throws XMLStreamException if the file is not well-formed
+     * @throws ParserConfigurationException
+     */
+    public <R> long process(File input, final RecordProcessor<R> processor, RecordSink<R> sink)
+            throws IOException, XMLStreamException, ParserConfigurationException {
+        long start = System.nanoTime();
+        long count = 0;
+        ArrayDeque<Future<R>> pending = new ArrayDeque<>();
+        Set<Future<R>> running = new HashSet<>();
+        CompletionService<R> completion = new ExecutorCompletionService<>(executor);
+        try (XmlPullReader reader = new XmlPullReader(input)) {
+            if (!reader.nextElement()) {
+                return 0;
+            }
+            while (reader.nextChild(1)) {
+                if (recordName != null && !recordName.equals(reader.getName())) {
+                    continue;
+                }
+                final Element record = reader.readElement();
+                final long index = count++;
+                Callable<R> task = new Callable<R>() {
+                    @Override
+                    public R call() throws Exception {
+                        return processor.process(record, index);
+                    }
+
+                };
+                if (preserveOrder) {
+                    pending.add(executor.submit(task));
+                    while (pending.size() > window) {
+                        accept(sink, await(pending.poll()));
+                    }
+                } else {
+                    running.add(completion.submit(task));
+                    while (running.size() > window) {
+                        accept(sink, await(take(completion, running)));
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                accept(sink, await(pending.poll()));
+            }
+            while (!running.isEmpty()) {
+                accept(sink, await(take(completion, running)));
+            }
+        } finally {
+            for (Future<R> future : pending) {
+                future.cancel(true);
+            }
+            for (Future<R> future : running) {
+                future.cancel(true);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(input + ": " + count + " records in " + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        return count;
+    }
+
+    /**
+     * Write the records of a file to shard files in a directory. Every shard is a document with a copy of the
+     * document element of the input, with name, namespace declarations and attributes, and the next records as
+     * children. The shards are named like the input with a sequence number, for example <code>data-00001.xml</code>,
+     * written concurrently in UTF-8, and every shard is replaced atomically when complete.
+     *
+     * @param input
+     * @param directory the directory of the shards, which must exist
+     * @param recordsPerShard the maximum number of records per shard
+     * @return the shard files in the order of the records
+     * @throws IOException if the file cannot be read, a shard cannot be written or the writing was interrupted
+     * @throws XMLStreamException if the file is not well-formed
+     * @throws ParserConfigurationException
+     */
+    public List<File> writeShards(File input, File directory, int recordsPerShard)
+            throws IOException, XMLStreamException, ParserConfigurationException {
+        if (recordsPerShard < 1) {
+            throw new IllegalArgumentException("recordsPerShard must be positive: " + recordsPerShard);
+        }
+        String name = input.getName();
+        if (name.toLowerCase(Locale.ENGLISH).endsWith(EXTENSION)) {
+            name = name.substring(0, name.length() - EXTENSION.length());
+        }
+        List<File> shards = new ArrayList<>();
+        ArrayDeque<Future<File>> pending = new ArrayDeque<>();
+        try (XmlPullReader reader = new XmlPullReader(input)) {
+            if (!reader.nextElement()) {
+                return shards;
+            }
+            // the document element is written as text once, so the shard tasks do not share DOM nodes
+            Element root = reader.copyStartTag();
+            StringBuilder startTag = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            DomSerializer.writeStartTag(root, startTag);
+            StringBuilder endTag = new StringBuilder();
+            DomSerializer.writeEndTag(root, endTag);
+            endTag.append(LINE_SEPARATOR);
+
+            List<Element> records = new ArrayList<>(recordsPerShard);
+            int shard = 0;
+            while (true) {
+                boolean more = reader.nextChild(1);
+                if (more && recordName != null && !recordName.equals(reader.getName())) {
+                    continue;
+                }
+                if (more) {
+                    records.add(reader.readElement());
+                }
+                if (records.size() == recordsPerShard || !more && !records.isEmpty()) {
+                    File file = new File(directory, String.format(Locale.ENGLISH, "%s-%05d%s", name, ++shard, EXTENSION));
+                    pending.add(executor.submit(new ShardWriter(file, startTag.toString(), records, endTag.toString())));
+                    while (pending.size() > window) {
+                        shards.add(await(pending.poll()));
+                    }
+                    records = new ArrayList<>(recordsPerShard);
+                }
+                if (!more) {
+                    break;
+                }
+            }
+            while (!pending.isEmpty()) {
+                shards.add(await(pending.poll()));
+            }
+        } finally {
+            for (Future<File> future : pending) {
+                future.cancel(true);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(input + ": " + shards.size() + " shards written to " + directory);
+        }
+        return shards;
+    }
+
+    private static <R> void accept(RecordSink<R> sink, R result) throws IOException {
+        if (sink != null) {
+            sink.accept(result);
+        }
+    }
+
+    private static <R> Future<R> take(CompletionService<R> completion, Set<Future<R>> running) throws IOException {
+        try {
+            Future<R> future = completion.take();
+            running.remove(future);
+            return future;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for record processing", e);
+        }
+    }
+
+    private static <R> R await(Future<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for record processing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error processing record: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static final class ShardWriter implements Callable<File> {
+        private final File file;
+        private final String startTag;
+        private final List<Element> records;
+        private final String endTag;
+
+        ShardWriter(File file, String startTag, List<Element> records, String endTag) {
+            this.file = file;
+            this.startTag = startTag;
+            this.records = records;
+            this.endTag = endTag;
+        }
+
+        @Override
+        public File call() throws IOException {
+            ChannelTextWriter writer = new ChannelTextWriter(file, StandardCharsets.UTF_8, true);
+            boolean complete = false;
+            try {
+                writer.append(startTag);
+                for (Element record : records) {
+                    DomSerializer.write(record, writer);
+                }
+                writer.append(endTag);
+                complete = true;
+            } finally {
+                if (complete) {
+                    writer.close();
+                } else {
+                    writer.abort();
+                }
+            }
+            return file;
+        }
+
+    }
+
+}
@@ -0,0 +1,204 @@
+package org.schalm.util.helper.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Sends the events recorded by a {@link SaxRecorder} to a content handler.<br />
+ * Names are decoded once into strings, text is decoded into a reused character array and the attributes of all
+ * elements share one reused instance, as the SAX contract allows. A file is mapped into memory instead of being read,
+ * so it must not be larger than 2 GB.
+ *
+ * @version $Id$
+ */
+public final class SaxReplayer {
+    private final ByteBuffer buffer;
+    private final ContentHandler handler;
+    private final List<String> strings = new ArrayList<>();
+    private final AttributesImpl attributes = new AttributesImpl();
+    private char[] chars = new char[0x400];
+
+    private SaxReplayer(ByteBuffer buffer, ContentHandler handler) {
+        this.buffer = buffer;
+        this.handler = handler;
+    }
+
+    /**
+     * Replay a recorded file.
+     *
+     * @param recording
+     * @param handler receives the events
+     * @throws IOException if the file cannot be read
+     * @throws SAXException if the recording is invalid or thrown by the handler
+     */
+    public static void replay(File recording, ContentHandler handler) throws IOException, SAXException {
+        try (FileChannel channel = FileChannel.open(recording.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Recording too large to map: " + recording);
+            }
+            replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), handler);
+        }
+    }
+
+    /**
+     * Replay a recording from the position of the buffer to its limit, for example a mapped file. The position of
+     * the buffer is moved to the end of the recording.
+     *
+     * @param recording
+     * @param handler receives the events
+     * @throws SAXException if the recording is invalid or thrown by the handler
+     */
+    public static void replay(ByteBuffer recording, ContentHandler handler) throws SAXException {
+        SaxReplayer replayer = new SaxReplayer(recording, handler);
+        try {
+            replayer.readHeader();
+            replayer.run();
+        } catch (BufferUnderflowException e) {
+            throw new SAXException("Truncated recording", e);
+        }
+    }
+
+    private void readHeader() throws SAXException {
+        for (byte b : SaxRecorder.MAGIC) {
+            if (buffer.get() != b) {
+                throw new SAXException("Not a SAX recording");
+            }
+        }
+        byte version = buffer.get();
+        if (version != SaxRecorder.VERSION) {
+            throw new SAXException("Unsupported recording version " + version);
+        }
+    }
+
+    private void run() throws SAXException {
+        while (buffer.hasRemaining()) {
+            byte type = buffer.get();
+            switch (type) {
+                case SaxRecorder.START_DOCUMENT:
+                    handler.startDocument();
+                    break;
+                case SaxRecorder.END_DOCUMENT:
+                    handler.endDocument();
+                    return;
+                case SaxRecorder.START_PREFIX_MAPPING: {
+                    String prefix = readString();
+                    handler.startPrefixMapping(prefix, readString());
+                    break;
+                }
+                case SaxRecorder.END_PREFIX_MAPPING:
+                    handler.endPrefixMapping(readString());
+                    break;
+                case SaxRecorder.START_ELEMENT: {
+                    String uri = readString();
+                    String localName = readString();
+                    String qName = readString();
+                    attributes.clear();
+                    int length = readInt();
+                    for (int i = 0; i < length; i++) {
+                        String attributeUri = readString();
+                        String attributeLocalName = readString();
+                        String attributeQName = readString();
+                        String attributeType = readString();
+                        attributes.addAttribute(attributeUri, attributeLocalName, attributeQName, attributeType,
+                                new String(chars, 0, readChars()));
+                    }
+                    handler.startElement(uri, localName, qName, attributes);
+                    break;
+                }
+                case SaxRecorder.END_ELEMENT: {
+                    String uri = readString();
+                    String localName = readString();
+                    handler.endElement(uri, localName, readString());
+                    break;
+                }
+                case SaxRecorder.CHARACTERS:
+                    handler.characters(chars, 0, readChars());
+                    break;
+                case SaxRecorder.IGNORABLE_WHITESPACE:
+                    handler.ignorableWhitespace(chars, 0, readChars());
+                    break;
+                case SaxRecorder.PROCESSING_INSTRUCTION: {
+                    String target = readString();
+                    handler.processingInstruction(target, new String(chars, 0, readChars()));
+                    break;
+                }
+                case SaxRecorder.SKIPPED_ENTITY:
+                    handler.skippedEntity(readString());
+                    break;
+                default:
+                    throw new SAXException("Invalid event type " + type + " at position " + (buffer.position() - 1));
+            }
+        }
+        // a recording always ends with the end of the document
+        throw new SAXException("Truncated recording");
+    }
+
+    private String readString() throws SAXException {
+        int reference = readInt();
+        if (reference == SaxRecorder.NULL_STRING) {
+            return null;
+        }
+        if (reference == SaxRecorder.NEW_STRING) {
+            String value = new String(chars, 0, readChars());
+            strings.add(value);
+            return value;
+        }
+        int index = reference - 2;
+        if (index >= strings.size()) {
+            throw new SAXException("Invalid string reference " + reference + " at position " + buffer.position());
+        }
+        return strings.get(index);
+    }
+
+    /**
+     * Decode text into the character array.
+     *
+     * @return the number of characters
+     */
+    private int readChars() throws SAXException {
+        int length = readInt();
+        if (length < 0) {
+            throw new SAXException("Invalid text length " + length + " at position " + buffer.position());
+        }
+        if (length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(length, 2 * chars.length));
+        }
+        for (int i = 0; i < length; i++) {
+            int b = buffer.get();
+            if (b >= 0) {
+                chars[i] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[i] = (char) ((b & 0x1F) << 6 | buffer.get() & 0x3F);
+            } else if ((b & 0xF0) == 0xE0) {
+                int second = buffer.get() & 0x3F;
+                chars[i] = (char) ((b & 0x0F) << 12 | second << 6 | buffer.get() & 0x3F);
+            } else {
+                throw new SAXException("Invalid character encoding at position " + (buffer.position() - 1));
+            }
+        }
+        return length;
+    }
+
+    private int readInt() throws SAXException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new SAXException("Invalid number at position " + buffer.position());
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.schalm.util.helper.xml;
+
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Sends the events of a namespace aware <code>XMLStreamReader</code> to a SAX <code>ContentHandler</code>.<br />
+ * Text is passed on in the reader's character array without copying it. Comments are passed to handlers that also
+ * implement <code>LexicalHandler</code>, and the document type declaration is written by an {@link XMLWriter};
+ * other handlers skip them. Entity references the reader does not replace are passed on as skipped entities. A
+ * reference to an undeclared entity is an error, unless the document type declaration has an external subset,
+ * which may declare it but is not read.
+ *
+ * @version $Id$
+ */
+final class StaxToSax {
+    private static final Pattern EXTERNAL_SUBSET = Pattern.compile("<!DOCTYPE\\s+[^\\s\\[>]+\\s+(SYSTEM|PUBLIC)\\b");
+
+    private StaxToSax() {
+        // utility class
+    }
+
+    /**
+     * Reads all remaining events of the reader and sends them to the handler.
+     *
+     * @param reader positioned at the start of the document
+     * @param handler receives the events
+     * @throws XMLStreamException
+     * @throws SAXException
+     */
+    static void pump(XMLStreamReader reader, ContentHandler handler) throws XMLStreamException, SAXException {
+        AttributesImpl attributes = new AttributesImpl();
+        boolean externalSubset = false;
+        if (reader.getEventType() == XMLStreamConstants.START_DOCUMENT) {
+            handler.startDocument();
+        }
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement(reader, handler, attributes);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    handler.endElement(nonNull(reader.getNamespaceURI()), reader.getLocalName(),
+                            qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                        handler.endPrefixMapping(nonNull(reader.getNamespacePrefix(i)));
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.SPACE:
+                    handler.ignorableWhitespace(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    handler.processingInstruction(reader.getPITarget(), nonNull(reader.getPIData()));
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    if (reader.getText() == null && !externalSubset) {
+                        throw new XMLStreamException("The entity \"" + reader.getLocalName()
+                                + "\" was referenced, but not declared.", reader.getLocation());
+                    }
+                    handler.skippedEntity(reader.getLocalName());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    if (handler instanceof LexicalHandler) {
+                        ((LexicalHandler) handler).comment(reader.getTextCharacters(), reader.getTextStart(),
+                                reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.DTD:
+                    externalSubset = EXTERNAL_SUBSET.matcher(reader.getText()).lookingAt();
+                    if (handler instanceof XMLWriter) {
+                        ((XMLWriter) handler).writeDoctype(reader.getText());
+                    }
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    handler.endDocument();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void startElement(XMLStreamReader reader, ContentHandler handler, AttributesImpl attributes)
+            throws SAXException {
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            handler.startPrefixMapping(nonNull(reader.getNamespacePrefix(i)), nonNull(reader.getNamespaceURI(i)));
+        }
+        attributes.clear();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String localName = reader.getAttributeLocalName(i);
+            attributes.addAttribute(nonNull(reader.getAttributeNamespace(i)), localName,
+                    qualifiedName(reader.getAttributePrefix(i), localName), reader.getAttributeType(i),
+                    reader.getAttributeValue(i));
+        }
+        handler.startElement(nonNull(reader.getNamespaceURI()), reader.getLocalName(),
+                qualifiedName(reader.getPrefix(), reader.getLocalName()), attributes);
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+
+}
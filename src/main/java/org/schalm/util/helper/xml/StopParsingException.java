@@ -0,0 +1,24 @@
+package org.schalm.util.helper.xml;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Thrown by a content handler that has everything it needs, to end parsing early. The parsing method catches it, so
+ * it is never seen by callers.
+ *
+ * @version $Id$
+ */
+final class StopParsingException extends SAXException {
+    private static final long serialVersionUID = 1L;
+
+    StopParsingException() {
+        super("Parsing stopped");
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        // control flow only
+        return this;
+    }
+
+}
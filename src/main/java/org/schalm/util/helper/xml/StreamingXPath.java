@@ -0,0 +1,405 @@
+package org.schalm.util.helper.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPathExpressionException;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Evaluates simple XPath expressions while a document is parsed, without building a DOM.<br />
+ * Memory use depends only on the depth of the document and the size of the matched values. The supported subset is:
+ * <ul>
+ * <li>absolute location paths of child (<code>/</code>) and descendant (<code>//</code>) steps</li>
+ * <li>element names and the wildcard <code>*</code>, compared with the qualified name as written in the document</li>
+ * <li>predicates <code>[@name]</code> and <code>[@name='value']</code>, several predicates must all match</li>
+ * <li>a final <code>@name</code> step for an attribute value or <code>text()</code> step for the element's own
+ * text; otherwise the whole text content of the matched element is reported. After <code>//</code> they select
+ * the attribute or text of the element matched by the previous step and of all its descendants.</li>
+ * </ul>
+ * Several expressions are evaluated in one pass. Matches are reported to a {@link XPathMatchHandler} in the order
+ * they are completed, so the text of an element is reported after the matches nested in it. The handler can stop
+ * parsing once it has found what it needs. An instance can be used as
+ * <code>ContentHandler</code> for any SAX source, but not by two threads at the same time.
+ *
+ * @version $Id$
+ */
+public final class StreamingXPath extends DefaultHandler {
+    private static final int ELEMENT = 0;
+    private static final int ATTRIBUTE = 1;
+    private static final int TEXT = 2;
+    private final Path[] paths;
+    private final XPathMatchHandler handler;
+    private final List<Frame> frames = new ArrayList<>();
+    private final List<Collector> collectors = new ArrayList<>();
+    private int depth = 0;
+    private boolean stopped = false;
+
+    /**
+     * Creates a new evaluator.
+     *
+     * @param handler receives the matches
+     * @param expressions the expressions to evaluate
+     * @throws XPathExpressionException if an expression is not in the supported subset
+     */
+    public StreamingXPath(XPathMatchHandler handler, String... expressions) throws XPathExpressionException {
+        if (expressions.length == 0) {
+            throw new IllegalArgumentException("No expressions");
+        }
+        this.handler = handler;
+        this.paths = new Path[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            paths[i] = new Path(expressions[i]);
+        }
+    }
+
+    /**
+     * Parse a file and report the matches.
+     *
+     * @param file
+     * @return false, if the handler stopped parsing before the end of the document
+     * @throws IOException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public boolean evaluate(File file) throws IOException, SAXException, ParserConfigurationException {
+        SAXParser parser = XmlPools.borrowSAXParser();
+        try {
+            parser.parse(file, this);
+        } catch (SAXException e) {
+            if (!stopped) {
+                throw e;
+            }
+        } finally {
+            XmlPools.release(parser);
+        }
+        return !stopped;
+    }
+
+    /**
+     * Parse a stream and report the matches.
+     *
+     * @param stream
+     * @return false, if the handler stopped parsing before the end of the document
+     * @throws IOException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public boolean evaluate(InputStream stream) throws IOException, SAXException, ParserConfigurationException {
+        SAXParser parser = XmlPools.borrowSAXParser();
+        try {
+            parser.parse(stream, this);
+        } catch (SAXException e) {
+            if (!stopped) {
+                throw e;
+            }
+        } finally {
+            XmlPools.release(parser);
+        }
+        return !stopped;
+    }
+
+    /**
+     * Read the remaining events of a StAX reader and report the matches.
+     *
+     * @param reader positioned at the start of the document
+     * @return false, if the handler stopped parsing before the end of the document
+     * @throws XMLStreamException
+     * @throws SAXException
+     */
+    public boolean evaluate(XMLStreamReader reader) throws XMLStreamException, SAXException {
+        try {
+            StaxToSax.pump(reader, this);
+        } catch (SAXException e) {
+            if (!stopped) {
+                throw e;
+            }
+        }
+        return !stopped;
+    }
+
+    @Override
+    public void startDocument() {
+        depth = 0;
+        stopped = false;
+        collectors.clear();
+        Frame root = frame(0);
+        for (int p = 0; p < paths.length; p++) {
+            Arrays.fill(root.reach[p], false);
+            Arrays.fill(root.ancestor[p], false);
+            root.reach[p][0] = true;
+            root.ancestor[p][0] = true;
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        String name = qName == null || qName.isEmpty() ? localName : qName;
+        Frame parent = frames.get(depth);
+        depth++;
+        Frame current = frame(depth);
+        for (int p = 0; p < paths.length; p++) {
+            Path path = paths[p];
+            boolean[] parentReach = parent.reach[p];
+            boolean[] parentAncestor = parent.ancestor[p];
+            boolean[] reach = current.reach[p];
+            boolean[] ancestor = current.ancestor[p];
+            reach[0] = false;
+            ancestor[0] = parentAncestor[0];
+            for (int k = 1; k < reach.length; k++) {
+                Step step = path.steps[k - 1];
+                reach[k] = (step.descendant ? parentAncestor[k - 1] : parentReach[k - 1])
+                        && step.matches(name, attributes);
+                ancestor[k] = parentAncestor[k] || reach[k];
+            }
+            // "//@a" and "//text()" apply to the element of the previous step and its descendants
+            if (path.selfOrDescendant ? ancestor[ancestor.length - 1] : reach[reach.length - 1]) {
+                if (path.target == ATTRIBUTE) {
+                    String value = attributes.getValue(path.attribute);
+                    if (value != null) {
+                        report(path, value);
+                    }
+                } else {
+                    collectors.add(new Collector(path, depth));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        for (int i = 0; i < collectors.size(); i++) {
+            Collector collector = collectors.get(i);
+            if (collector.path.target == ELEMENT || collector.depth == depth) {
+                collector.text.append(ch, start, length);
+            }
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        int first = collectors.size();
+        while (first > 0 && collectors.get(first - 1).depth == depth) {
+            first--;
+        }
+        while (collectors.size() > first) {
+            Collector collector = collectors.remove(first);
+            // an element without text of its own has no text() node
+            if (collector.path.target == ELEMENT || collector.text.length() > 0) {
+                report(collector.path, collector.text.toString());
+            }
+        }
+        depth--;
+    }
+
+    private void report(Path path, String value) throws SAXException {
+        if (!handler.match(path.expression, value)) {
+            stopped = true;
+            throw new StopParsingException();
+        }
+    }
+
+    private Frame frame(int index) {
+        while (frames.size() <= index) {
+            frames.add(new Frame(paths));
+        }
+        return frames.get(index);
+    }
+
+    /**
+     * Matching state of the paths for one element on the current branch: <code>reach[p][k]</code> is true if the
+     * first k steps of path p end at this element, <code>ancestor[p][k]</code> if they end at it or at an ancestor.
+     */
+    private static final class Frame {
+        private final boolean[][] reach;
+        private final boolean[][] ancestor;
+
+        Frame(Path[] paths) {
+            reach = new boolean[paths.length][];
+            ancestor = new boolean[paths.length][];
+            for (int p = 0; p < paths.length; p++) {
+                reach[p] = new boolean[paths[p].steps.length + 1];
+                ancestor[p] = new boolean[paths[p].steps.length + 1];
+            }
+        }
+
+    }
+
+    private static final class Collector {
+        private final Path path;
+        private final int depth;
+        private final StringBuilder text = new StringBuilder();
+
+        Collector(Path path, int depth) {
+            this.path = path;
+            this.depth = depth;
+        }
+
+    }
+
+    private static final class Step {
+        private final boolean descendant;
+        private final String name;
+        private final String[] attributeNames;
+        private final String[] attributeValues;
+
+        Step(boolean descendant, String name, List<String[]> predicates) {
+            this.descendant = descendant;
+            this.name = "*".equals(name) ? null : name;
+            this.attributeNames = new String[predicates.size()];
+            this.attributeValues = new String[predicates.size()];
+            for (int i = 0; i < attributeNames.length; i++) {
+                attributeNames[i] = predicates.get(i)[0];
+                attributeValues[i] = predicates.get(i)[1];
+            }
+        }
+
+        boolean matches(String elementName, Attributes attributes) {
+            if (name != null && !name.equals(elementName)) {
+                return false;
+            }
+            for (int i = 0; i < attributeNames.length; i++) {
+                String value = attributes.getValue(attributeNames[i]);
+                if (value == null || attributeValues[i] != null && !attributeValues[i].equals(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * A parsed expression.
+     */
+    private static final class Path {
+        private final String expression;
+        private final Step[] steps;
+        private final int target;
+        private final String attribute;
+        private final boolean selfOrDescendant;
+
+        Path(String expression) throws XPathExpressionException {
+            this.expression = expression;
+            List<Step> parsed = new ArrayList<>();
+            int finalTarget = ELEMENT;
+            String finalAttribute = null;
+            boolean finalDescendant = false;
+            int pos = 0;
+            int length = expression.length();
+            if (length == 0 || expression.charAt(0) != '/') {
+                throw error("must be an absolute path");
+            }
+            while (pos < length) {
+                if (finalTarget != ELEMENT) {
+                    throw error("@attribute and text() must be the last step");
+                }
+                if (expression.charAt(pos) != '/') {
+                    throw error("unexpected character at " + pos);
+                }
+                boolean descendant = expression.startsWith("//", pos);
+                pos += descendant ? 2 : 1;
+                if (expression.startsWith("@", pos)) {
+                    int end = nameEnd(expression, pos + 1);
+                    finalAttribute = expression.substring(pos + 1, end);
+                    finalTarget = ATTRIBUTE;
+                    pos = end;
+                } else if (expression.startsWith("text()", pos)) {
+                    finalTarget = TEXT;
+                    pos += 6;
+                } else {
+                    int end = nameEnd(expression, pos);
+                    if (end == pos && expression.startsWith("*", pos)) {
+                        end++;
+                    }
+                    String name = expression.substring(pos, end);
+                    pos = end;
+                    List<String[]> predicates = new ArrayList<>();
+                    while (pos < length && expression.charAt(pos) == '[') {
+                        pos = predicate(expression, pos + 1, predicates);
+                    }
+                    if (name.isEmpty()) {
+                        throw error("missing element name");
+                    }
+                    parsed.add(new Step(descendant, name, predicates));
+                    continue;
+                }
+                if (finalTarget == ATTRIBUTE && finalAttribute.isEmpty()) {
+                    throw error("missing attribute name");
+                }
+                finalDescendant = descendant;
+            }
+            if (parsed.isEmpty() && !finalDescendant) {
+                throw error("no element step");
+            }
+            this.steps = parsed.toArray(new Step[parsed.size()]);
+            this.target = finalTarget;
+            this.attribute = finalAttribute;
+            this.selfOrDescendant = finalDescendant;
+        }
+
+        private int predicate(String s, int pos, List<String[]> predicates) throws XPathExpressionException {
+            pos = skipSpace(s, pos);
+            if (!s.startsWith("@", pos)) {
+                throw error("only attribute predicates are supported");
+            }
+            int end = nameEnd(s, pos + 1);
+            String name = s.substring(pos + 1, end);
+            if (name.isEmpty()) {
+                throw error("missing attribute name");
+            }
+            String value = null;
+            pos = skipSpace(s, end);
+            if (s.startsWith("=", pos)) {
+                pos = skipSpace(s, pos + 1);
+                if (pos >= s.length() || s.charAt(pos) != '\'' && s.charAt(pos) != '"') {
+                    throw error("attribute value must be quoted");
+                }
+                int close = s.indexOf(s.charAt(pos), pos + 1);
+                if (close < 0) {
+                    throw error("unterminated attribute value");
+                }
+                value = s.substring(pos + 1, close);
+                pos = skipSpace(s, close + 1);
+            }
+            if (!s.startsWith("]", pos)) {
+                throw error("unsupported predicate");
+            }
+            predicates.add(new String[]{name, value});
+            return pos + 1;
+        }
+
+        private static int nameEnd(String s, int pos) {
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.' && c != ':') {
+                    break;
+                }
+                pos++;
+            }
+            return pos;
+        }
+
+        private static int skipSpace(String s, int pos) {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+
+        private XPathExpressionException error(String message) {
+            return new XPathExpressionException("Unsupported expression " + expression + ": " + message);
+        }
+
+    }
+
+}
@@ -0,0 +1,323 @@
+package org.schalm.util.helper.xml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Compares the structure of two XML documents without building DOM trees and reports where they differ.<br />
+ * Each document is parsed once with SAX into a compact summary that holds a 64 bit hash of every element and text
+ * node and of every subtree. The summaries are then compared top-down, skipping equal subtrees, and the first
+ * differing nodes are reported as paths like <code>/root[1]/item[2]/text()[1]</code>. An element differs if its name
+ * or attributes differ, a text node if its text differs. Children are compared pairwise in order, surplus children of
+ * either document are reported with their own path. Comments and processing instructions are ignored.
+ *
+ * @version $Id$
+ */
+public final class StructuralComparator {
+    /**
+     * Default maximum number of differences reported.
+     */
+    public static final int DEFAULT_MAX_DIFFERENCES = 10;
+    private static final int BUFFER_SIZE = 0x10000;
+    private int maxDifferences = DEFAULT_MAX_DIFFERENCES;
+    private boolean ignoreAttributeOrder = true;
+    private boolean ignoreWhitespace = false;
+
+    /**
+     * @param maxDifferences maximum number of differences reported, comparison ends when reached
+     */
+    public void setMaxDifferences(int maxDifferences) {
+        if (maxDifferences < 1) {
+            throw new IllegalArgumentException("Maximum number of differences must be positive: " + maxDifferences);
+        }
+        this.maxDifferences = maxDifferences;
+    }
+
+    /**
+     * @param ignoreAttributeOrder whether elements with the same attributes in a different order are equal, true by
+     * default
+     */
+    public void setIgnoreAttributeOrder(boolean ignoreAttributeOrder) {
+        this.ignoreAttributeOrder = ignoreAttributeOrder;
+    }
+
+    /**
+     * @param ignoreWhitespace whether text is trimmed and whitespace-only text is ignored, false by default
+     */
+    public void setIgnoreWhitespace(boolean ignoreWhitespace) {
+        this.ignoreWhitespace = ignoreWhitespace;
+    }
+
+    /**
+     * Compare two files.
+     *
+     * @param first
+     * @param second
+     * @return the paths of the first differing nodes in document order, empty if the files are structurally equal
+     * @throws IOException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public List<String> compare(File first, File second) throws IOException, SAXException, ParserConfigurationException {
+        try (InputStream in1 = new BufferedInputStream(new FileInputStream(first), BUFFER_SIZE);
+                InputStream in2 = new BufferedInputStream(new FileInputStream(second), BUFFER_SIZE)) {
+            return compare(in1, in2);
+        }
+    }
+
+    /**
+     * Compare two streams.
+     *
+     * @param first
+     * @param second
+     * @return the paths of the first differing nodes in document order, empty if the documents are structurally equal
+     * @throws IOException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public List<String> compare(InputStream first, InputStream second)
+            throws IOException, SAXException, ParserConfigurationException {
+        return compare(summarize(first), summarize(second));
+    }
+
+    private Summary summarize(InputStream stream) throws IOException, SAXException, ParserConfigurationException {
+        Summary summary = new Summary(ignoreAttributeOrder, ignoreWhitespace);
+        SAXParser parser = XmlPools.borrowSAXParser();
+        try {
+            parser.parse(stream, summary);
+        } finally {
+            XmlPools.release(parser);
+        }
+        return summary;
+    }
+
+    private List<String> compare(Summary first, Summary second) {
+        List<String> differences = new ArrayList<>();
+        ArrayDeque<int[]> pending = new ArrayDeque<>();
+        pending.push(new int[]{0, 0});
+        while (!pending.isEmpty() && differences.size() < maxDifferences) {
+            int[] pair = pending.pop();
+            int a = pair[0];
+            int b = pair[1];
+            if (a < 0 || b < 0) {
+                // only present in one document
+                differences.add(a < 0 ? second.path(b) : first.path(a));
+                continue;
+            }
+            if (first.subtreeHash[a] == second.subtreeHash[b]) {
+                continue;
+            }
+            if (first.hash[a] != second.hash[b]) {
+                differences.add(first.path(a));
+                continue;
+            }
+            // same node, different children: compare them pairwise in document order
+            List<int[]> children = new ArrayList<>();
+            int childA = first.firstChild[a];
+            int childB = second.firstChild[b];
+            while (childA >= 0 || childB >= 0) {
+                children.add(new int[]{childA, childB});
+                childA = childA >= 0 ? first.nextSibling[childA] : -1;
+                childB = childB >= 0 ? second.nextSibling[childB] : -1;
+            }
+            for (int i = children.size() - 1; i >= 0; i--) {
+                pending.push(children.get(i));
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * Hashes of all element and text nodes of a document in document order, linked as a tree by index. Node 0 is the
+     * document element.
+     */
+    private static final class Summary extends DefaultHandler {
+        private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+        private static final long FNV_PRIME = 0x100000001b3L;
+        private static final String TEXT = "text()";
+        private final boolean ignoreAttributeOrder;
+        private final boolean ignoreWhitespace;
+        private final Map<String, String> names = new HashMap<>();
+        private final StringBuilder text = new StringBuilder();
+        private final ArrayDeque<Open> open = new ArrayDeque<>();
+        private int size = 0;
+        private long[] hash = new long[256];
+        private long[] subtreeHash = new long[256];
+        private int[] parent = new int[256];
+        private int[] firstChild = new int[256];
+        private int[] nextSibling = new int[256];
+        private int[] position = new int[256];
+        private String[] name = new String[256];
+
+        Summary(boolean ignoreAttributeOrder, boolean ignoreWhitespace) {
+            this.ignoreAttributeOrder = ignoreAttributeOrder;
+            this.ignoreWhitespace = ignoreWhitespace;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            flushText();
+            String elementName = qName == null || qName.isEmpty() ? localName : qName;
+            long h = hash(FNV_OFFSET, elementName);
+            long attributeHash = 0;
+            for (int i = 0; i < attributes.getLength(); i++) {
+                long attribute = hash(hash(hash(FNV_OFFSET, attributes.getQName(i)), "="), attributes.getValue(i));
+                attributeHash = ignoreAttributeOrder ? attributeHash + mix(attribute) : mix(attributeHash ^ attribute);
+            }
+            int node = add(elementName, mix(h ^ attributeHash));
+            open.push(new Open(node));
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            flushText();
+            Open element = open.pop();
+            complete(element.node, mix(element.childHash ^ hash[element.node]));
+        }
+
+        private void flushText() {
+            if (text.length() == 0 || open.isEmpty()) {
+                text.setLength(0);
+                return;
+            }
+            String value = text.toString();
+            text.setLength(0);
+            if (ignoreWhitespace) {
+                value = value.trim();
+                if (value.isEmpty()) {
+                    return;
+                }
+            }
+            int node = add(TEXT, mix(hash(hash(FNV_OFFSET, TEXT), value)));
+            complete(node, hash[node]);
+        }
+
+        private int add(String nodeName, long nodeHash) {
+            if (size == hash.length) {
+                grow();
+            }
+            int node = size++;
+            String shared = names.get(nodeName);
+            if (shared == null) {
+                shared = nodeName;
+                names.put(nodeName, nodeName);
+            }
+            name[node] = shared;
+            hash[node] = nodeHash;
+            firstChild[node] = -1;
+            nextSibling[node] = -1;
+            Open current = open.peek();
+            if (current == null) {
+                parent[node] = -1;
+                position[node] = 1;
+            } else {
+                parent[node] = current.node;
+                position[node] = current.position(shared);
+                if (current.lastChild < 0) {
+                    firstChild[current.node] = node;
+                } else {
+                    nextSibling[current.lastChild] = node;
+                }
+                current.lastChild = node;
+            }
+            return node;
+        }
+
+        private void complete(int node, long nodeSubtreeHash) {
+            subtreeHash[node] = nodeSubtreeHash;
+            Open current = open.peek();
+            if (current != null) {
+                current.childHash = mix(current.childHash ^ nodeSubtreeHash);
+            }
+        }
+
+        private void grow() {
+            int length = hash.length * 2;
+            hash = Arrays.copyOf(hash, length);
+            subtreeHash = Arrays.copyOf(subtreeHash, length);
+            parent = Arrays.copyOf(parent, length);
+            firstChild = Arrays.copyOf(firstChild, length);
+            nextSibling = Arrays.copyOf(nextSibling, length);
+            position = Arrays.copyOf(position, length);
+            name = Arrays.copyOf(name, length);
+        }
+
+        String path(int node) {
+            List<Integer> nodes = new ArrayList<>();
+            for (int i = node; i >= 0; i = parent[i]) {
+                nodes.add(i);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                int n = nodes.get(i);
+                sb.append('/').append(name[n]).append('[').append(position[n]).append(']');
+            }
+            return sb.toString();
+        }
+
+        private static long hash(long h, String s) {
+            for (int i = 0; i < s.length(); i++) {
+                h = (h ^ s.charAt(i)) * FNV_PRIME;
+            }
+            return (h ^ 0xFFFF) * FNV_PRIME;
+        }
+
+        /**
+         * Finalization step of MurmurHash3, spreads every input bit over the result.
+         */
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+
+    }
+
+    /**
+     * An element whose end has not been parsed yet.
+     */
+    private static final class Open {
+        private final int node;
+        private Map<String, Integer> positions;
+        private int lastChild = -1;
+        private long childHash = 0;
+
+        Open(int node) {
+            this.node = node;
+        }
+
+        int position(String childName) {
+            if (positions == null) {
+                positions = new HashMap<>();
+            }
+            Integer count = positions.get(childName);
+            int next = count == null ? 1 : count + 1;
+            positions.put(childName, next);
+            return next;
+        }
+
+    }
+
+}
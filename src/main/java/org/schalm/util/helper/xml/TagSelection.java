@@ -0,0 +1,83 @@
+package org.schalm.util.helper.xml;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tag values and tag attribute values requested from one document, and the values found so far.<br />
+ * A name <code>tag</code> requests the value of the first child of the first element <code>tag</code>, a name
+ * <code>tag@attribute</code> the attribute of the first element <code>tag</code>, like
+ * {@link XmlHelper#getTagValue} and {@link XmlHelper#getTagAttributeValue}.
+ *
+ * @version $Id$
+ */
+final class TagSelection {
+    /**
+     * Separates tag and attribute name in a requested name.
+     */
+    static final char ATTRIBUTE_SEPARATOR = '@';
+    private final Map<String, List<String[]>> requests = new HashMap<>();
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    /**
+     * Creates a new selection.
+     *
+     * @param names the requested names
+     */
+    TagSelection(Collection<String> names) {
+        for (String name : names) {
+            if (values.put(name, "") != null) {
+                continue;
+            }
+            int separator = name.indexOf(ATTRIBUTE_SEPARATOR);
+            String tag = separator < 0 ? name : name.substring(0, separator);
+            String attribute = separator < 0 ? null : name.substring(separator + 1);
+            List<String[]> tagRequests = requests.get(tag);
+            if (tagRequests == null) {
+                tagRequests = new ArrayList<>();
+                requests.put(tag, tagRequests);
+            }
+            tagRequests.add(new String[]{name, attribute});
+        }
+    }
+
+    /**
+     * Take the requests for the first element with a tag name.
+     *
+     * @param tagName
+     * @return pairs of requested name and attribute name, which is null for the tag value, or null if the tag was not
+     * requested or has been found before
+     */
+    List<String[]> take(String tagName) {
+        return requests.remove(tagName);
+    }
+
+    /**
+     * @return true, if all requested tags have been found
+     */
+    boolean isComplete() {
+        return requests.isEmpty();
+    }
+
+    /**
+     * Store a value found.
+     *
+     * @param name the requested name
+     * @param value the value, null for none
+     */
+    void put(String name, String value) {
+        values.put(name, value == null ? "" : value.trim());
+    }
+
+    /**
+     * @return the trimmed values by requested name in request order, the empty string where none was found
+     */
+    Map<String, String> values() {
+        return values;
+    }
+
+}
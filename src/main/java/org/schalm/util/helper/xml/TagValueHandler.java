@@ -0,0 +1,74 @@
+package org.schalm.util.helper.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Collects the values of a {@link TagSelection} while parsing and stops parsing with a {@link StopParsingException}
+ * as soon as all of them are found. The value of a tag is the text before its first child element or its end.
+ *
+ * @version $Id$
+ */
+final class TagValueHandler extends DefaultHandler {
+    private final TagSelection selection;
+    private final List<String> pending = new ArrayList<>();
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * Creates a new handler.
+     *
+     * @param selection receives the values
+     */
+    TagValueHandler(TagSelection selection) {
+        this.selection = selection;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        finishText();
+        List<String[]> requests = selection.take(qName == null || qName.isEmpty() ? localName : qName);
+        if (requests == null) {
+            return;
+        }
+        for (String[] request : requests) {
+            if (request[1] == null) {
+                pending.add(request[0]);
+            } else {
+                selection.put(request[0], attributes.getValue(request[1]));
+            }
+        }
+        if (pending.isEmpty() && selection.isComplete()) {
+            throw new StopParsingException();
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (!pending.isEmpty()) {
+            text.append(ch, start, length);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        finishText();
+    }
+
+    private void finishText() throws SAXException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (String name : pending) {
+            selection.put(name, text.toString());
+        }
+        pending.clear();
+        text.setLength(0);
+        if (selection.isComplete()) {
+            throw new StopParsingException();
+        }
+    }
+
+}
@@ -0,0 +1,429 @@
+package org.schalm.util.helper.xml;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Sends the events of one parse to several content handlers, so a file is parsed once for all of them.<br />
+ * By default every event is passed to the handlers one after the other on the parsing thread. In asynchronous mode
+ * the events are copied into batches, and every handler replays the batches on a thread of the given executor. Each
+ * handler has a bounded queue of batches, so the parser waits when a handler falls behind instead of buffering the
+ * whole document. An error of a handler is thrown by the next event or at the latest by {@link #endDocument()}, after
+ * all handlers have finished. If the parse fails before the end of the document, {@link #abort()} stops the handlers.
+ * The document locator is only passed on in synchronous mode, as it refers to the parser's current position. The
+ * executor must run the tasks of all handlers at the same time; if a task has not started after
+ * {@link #START_TIMEOUT} milliseconds while the parser waits for it, the parse fails instead of waiting forever.
+ * <pre>
+ * TeeContentHandler tee = new TeeContentHandler(executor, 16, indenter, extractor, hasher);
+ * XmlHelper.parse(file, tee);
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class TeeContentHandler extends DefaultHandler {
+    /**
+     * Number of events per batch in asynchronous mode.
+     */
+    public static final int BATCH_SIZE = 256;
+    /**
+     * Milliseconds the parser waits for the task of a handler to be started by the executor.
+     */
+    public static final long START_TIMEOUT = 10000;
+    private static final long POLL_INTERVAL = 100;
+    private static final int CHAR_LIMIT = 0x4000;
+    private static final byte START_DOCUMENT = 0;
+    private static final byte END_DOCUMENT = 1;
+    private static final byte START_PREFIX_MAPPING = 2;
+    private static final byte END_PREFIX_MAPPING = 3;
+    private static final byte START_ELEMENT = 4;
+    private static final byte END_ELEMENT = 5;
+    private static final byte CHARACTERS = 6;
+    private static final byte IGNORABLE_WHITESPACE = 7;
+    private static final byte PROCESSING_INSTRUCTION = 8;
+    private static final byte SKIPPED_ENTITY = 9;
+    private final ContentHandler[] handlers;
+    private final ExecutorService executor;
+    private final int capacity;
+    long startTimeout = START_TIMEOUT;
+    private Consumer[] consumers;
+    private Batch batch;
+
+    /**
+     * Creates a handler passing every event to all handlers on the parsing thread.
+     *
+     * @param handlers receive the events in this order
+     */
+    public TeeContentHandler(ContentHandler... handlers) {
+        this.handlers = handlers.clone();
+        this.executor = null;
+        this.capacity = 0;
+    }
+
+    /**
+     * Creates a handler passing the events in batches to all handlers on threads of the executor.
+     *
+     * @param executor runs one task per handler during a parse, so it needs a free thread for each handler
+     * @param capacity the maximum number of batches queued per handler
+     * @param handlers receive the events
+     */
+    public TeeContentHandler(ExecutorService executor, int capacity, ContentHandler... handlers) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.handlers = handlers.clone();
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Stops the handlers of an asynchronous parse that did not reach the end of the document.
+     */
+    public void abort() {
+        if (consumers != null) {
+            for (Consumer consumer : consumers) {
+                consumer.future.cancel(true);
+            }
+            consumers = null;
+        }
+        batch = null;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.setDocumentLocator(locator);
+            }
+        }
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.startDocument();
+            }
+            return;
+        }
+        abort();
+        consumers = new Consumer[handlers.length];
+        for (int i = 0; i < handlers.length; i++) {
+            consumers[i] = new Consumer(handlers[i], new ArrayBlockingQueue<Batch>(capacity));
+            consumers[i].submitted = System.currentTimeMillis();
+            consumers[i].future = executor.submit(consumers[i]);
+        }
+        batch = new Batch();
+        add(START_DOCUMENT, null, null, null, null);
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.endDocument();
+            }
+            return;
+        }
+        add(END_DOCUMENT, null, null, null, null);
+        batch.last = true;
+        publish();
+        Throwable error = null;
+        try {
+            for (Consumer consumer : consumers) {
+                while (true) {
+                    try {
+                        consumer.future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        checkStarted(consumer);
+                    }
+                }
+                if (error == null) {
+                    error = consumer.error;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SAXException("Interrupted while waiting for handlers", e);
+        } catch (ExecutionException e) {
+            error = e.getCause();
+        } finally {
+            abort();
+        }
+        if (error != null) {
+            throw toSAXException(error);
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.startPrefixMapping(prefix, uri);
+            }
+        } else {
+            add(START_PREFIX_MAPPING, prefix, uri, null, null);
+        }
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.endPrefixMapping(prefix);
+            }
+        } else {
+            add(END_PREFIX_MAPPING, prefix, null, null, null);
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.startElement(uri, localName, qName, attributes);
+            }
+        } else {
+            // the parser reuses its attributes
+            add(START_ELEMENT, uri, localName, qName, new AttributesImpl(attributes));
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.endElement(uri, localName, qName);
+            }
+        } else {
+            add(END_ELEMENT, uri, localName, qName, null);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.characters(ch, start, length);
+            }
+        } else {
+            addChars(CHARACTERS, ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.ignorableWhitespace(ch, start, length);
+            }
+        } else {
+            addChars(IGNORABLE_WHITESPACE, ch, start, length);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.processingInstruction(target, data);
+            }
+        } else {
+            add(PROCESSING_INSTRUCTION, target, data, null, null);
+        }
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        if (executor == null) {
+            for (ContentHandler handler : handlers) {
+                handler.skippedEntity(name);
+            }
+        } else {
+            add(SKIPPED_ENTITY, name, null, null, null);
+        }
+    }
+
+    private void add(byte type, String first, String second, String third, Attributes attributes)
+            throws SAXException {
+        int index = batch.size++;
+        batch.types[index] = type;
+        batch.strings[3 * index] = first;
+        batch.strings[3 * index + 1] = second;
+        batch.strings[3 * index + 2] = third;
+        batch.attributes[index] = attributes;
+        if (batch.size == BATCH_SIZE) {
+            publish();
+        }
+    }
+
+    private void addChars(byte type, char[] ch, int start, int length) throws SAXException {
+        int index = batch.size++;
+        batch.types[index] = type;
+        batch.offsets[index] = batch.charCount;
+        batch.lengths[index] = length;
+        if (batch.charCount + length > batch.chars.length) {
+            batch.chars = Arrays.copyOf(batch.chars, Math.max(2 * batch.chars.length, batch.charCount + length));
+        }
+        System.arraycopy(ch, start, batch.chars, batch.charCount, length);
+        batch.charCount += length;
+        if (batch.size == BATCH_SIZE || batch.charCount >= CHAR_LIMIT) {
+            publish();
+        }
+    }
+
+    private void publish() throws SAXException {
+        if (consumers == null) {
+            throw new SAXException("Document not started or aborted");
+        }
+        for (Consumer consumer : consumers) {
+            if (consumer.error != null) {
+                Throwable error = consumer.error;
+                abort();
+                throw toSAXException(error);
+            }
+        }
+        try {
+            for (Consumer consumer : consumers) {
+                while (!consumer.queue.offer(batch, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    checkStarted(consumer);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new SAXException("Interrupted while passing events to handlers", e);
+        }
+        batch = new Batch();
+    }
+
+    /**
+     * Fail if the executor has not started the task of a handler in time, as it would never take any events if the
+     * executor has fewer free threads than there are handlers.
+     */
+    private void checkStarted(Consumer consumer) throws SAXException {
+        if (!consumer.started && System.currentTimeMillis() - consumer.submitted > startTimeout) {
+            abort();
+            throw new SAXException("Handler not started within " + startTimeout
+                    + " ms, the executor needs a free thread for each of the " + handlers.length + " handlers");
+        }
+    }
+
+    private static SAXException toSAXException(Throwable error) {
+        if (error instanceof SAXException) {
+            return (SAXException) error;
+        }
+        if (error instanceof Exception) {
+            return new SAXException((Exception) error);
+        }
+        // SAXException only wraps exceptions
+        return new SAXException(error.toString(), new ExecutionException(error));
+    }
+
+    /**
+     * A sequence of events, read by all consumers and never changed after it has been published.
+     */
+    private static final class Batch {
+        private final byte[] types = new byte[BATCH_SIZE];
+        private final String[] strings = new String[3 * BATCH_SIZE];
+        private final Attributes[] attributes = new Attributes[BATCH_SIZE];
+        private final int[] offsets = new int[BATCH_SIZE];
+        private final int[] lengths = new int[BATCH_SIZE];
+        private char[] chars = new char[CHAR_LIMIT];
+        private int charCount = 0;
+        private int size = 0;
+        private boolean last = false;
+
+        void replay(ContentHandler handler) throws SAXException {
+            for (int i = 0; i < size; i++) {
+                switch (types[i]) {
+                    case START_DOCUMENT:
+                        handler.startDocument();
+                        break;
+                    case END_DOCUMENT:
+                        handler.endDocument();
+                        break;
+                    case START_PREFIX_MAPPING:
+                        handler.startPrefixMapping(strings[3 * i], strings[3 * i + 1]);
+                        break;
+                    case END_PREFIX_MAPPING:
+                        handler.endPrefixMapping(strings[3 * i]);
+                        break;
+                    case START_ELEMENT:
+                        handler.startElement(strings[3 * i], strings[3 * i + 1], strings[3 * i + 2], attributes[i]);
+                        break;
+                    case END_ELEMENT:
+                        handler.endElement(strings[3 * i], strings[3 * i + 1], strings[3 * i + 2]);
+                        break;
+                    case CHARACTERS:
+                        handler.characters(chars, offsets[i], lengths[i]);
+                        break;
+                    case IGNORABLE_WHITESPACE:
+                        handler.ignorableWhitespace(chars, offsets[i], lengths[i]);
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        handler.processingInstruction(strings[3 * i], strings[3 * i + 1]);
+                        break;
+                    case SKIPPED_ENTITY:
+                        handler.skippedEntity(strings[3 * i]);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown event " + types[i]);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Replays the batches of its queue to one handler. After an error it keeps taking batches without replaying
+     * them, so the parsing thread never waits for it.
+     */
+    private static final class Consumer implements Callable<Void> {
+        private final ContentHandler handler;
+        private final BlockingQueue<Batch> queue;
+        private volatile Throwable error;
+        private volatile boolean started = false;
+        private long submitted;
+        private Future<Void> future;
+
+        Consumer(ContentHandler handler, BlockingQueue<Batch> queue) {
+            this.handler = handler;
+            this.queue = queue;
+        }
+
+        @Override
+        public Void call() throws InterruptedException {
+            started = true;
+            while (true) {
+                Batch batch = queue.take();
+                if (error == null) {
+                    try {
+                        batch.replay(handler);
+                    } catch (Throwable e) {
+                        // also errors, so endDocument reports them instead of failing itself
+                        error = e;
+                    }
+                }
+                if (batch.last) {
+                    return null;
+                }
+            }
+        }
+
+    }
+
+}
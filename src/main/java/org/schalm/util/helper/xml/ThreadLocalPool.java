@@ -0,0 +1,69 @@
+package org.schalm.util.helper.xml;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps idle instances of a class that is not thread-safe separately for every thread.<br />
+ * A thread borrows an instance with {@link #poll()}, creating a new one if the pool is empty, and returns it with
+ * {@link #release(Object)}, which resets it. Nested use on one thread simply borrows several instances.
+ *
+ * @param <T> type of the pooled instances
+ * @version $Id$
+ */
+abstract class ThreadLocalPool<T> {
+    private final int maxIdle;
+    private final ThreadLocal<ArrayDeque<T>> idle = new ThreadLocal<ArrayDeque<T>>() {
+        @Override
+        protected ArrayDeque<T> initialValue() {
+            return new ArrayDeque<>(maxIdle);
+        }
+
+    };
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxIdle maximum number of idle instances kept per thread
+     */
+    ThreadLocalPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Take an idle instance of the current thread.
+     *
+     * @return the instance or null, if there is none
+     */
+    T poll() {
+        return idle.get().pollFirst();
+    }
+
+    /**
+     * Reset an instance and keep it for the current thread, unless there are enough idle instances already.
+     *
+     * @param instance the instance to return, may be null
+     */
+    void release(T instance) {
+        if (instance == null) {
+            return;
+        }
+        try {
+            reset(instance);
+        } catch (UnsupportedOperationException e) {
+            // cannot be reused
+            return;
+        }
+        ArrayDeque<T> instances = idle.get();
+        if (instances.size() < maxIdle) {
+            instances.addFirst(instance);
+        }
+    }
+
+    /**
+     * Restore the state of a new instance.
+     *
+     * @param instance
+     */
+    abstract void reset(T instance);
+
+}
@@ -0,0 +1,142 @@
+package org.schalm.util.helper.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes characters as UTF-8 into a reusable byte buffer that is written to a stream when full.<br />
+ * ASCII characters are copied directly, no objects are allocated per character. Surrogate pairs may be split between
+ * two calls, unpaired surrogates are written as '?'.
+ *
+ * @version $Id$
+ */
+final class Utf8Output extends XmlOutput {
+    /**
+     * Default size of the byte buffer (8 KB).
+     */
+    static final int BUFFER_SIZE = 0x2000;
+    private static final byte REPLACEMENT = '?';
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count = 0;
+    private char highSurrogate = 0;
+
+    /**
+     * Creates a new output.
+     *
+     * @param out receives the encoded bytes
+     */
+    Utf8Output(OutputStream out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new output.
+     *
+     * @param out receives the encoded bytes
+     * @param bufferSize size of the byte buffer, at least 4
+     */
+    Utf8Output(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 4)];
+    }
+
+    @Override
+    void write(char c) throws IOException {
+        if (c < 0x80 && highSurrogate == 0) {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte) c;
+        } else {
+            encode(c);
+        }
+    }
+
+    @Override
+    void write(CharSequence s, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80 && highSurrogate == 0) {
+                if (count == buffer.length) {
+                    flushBuffer();
+                }
+                buffer[count++] = (byte) c;
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    @Override
+    void write(char[] ch, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = ch[i];
+            if (c < 0x80 && highSurrogate == 0) {
+                if (count == buffer.length) {
+                    flushBuffer();
+                }
+                buffer[count++] = (byte) c;
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    private void encode(char c) throws IOException {
+        if (buffer.length - count < 4) {
+            flushBuffer();
+        }
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            buffer[count++] = REPLACEMENT;
+        }
+        if (c < 0x80) {
+            buffer[count++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[count++] = (byte) (0xC0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[count++] = REPLACEMENT;
+        } else {
+            buffer[count++] = (byte) (0xE0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    @Override
+    void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    void finish() throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            write((char) REPLACEMENT);
+        }
+        flush();
+    }
+
+}
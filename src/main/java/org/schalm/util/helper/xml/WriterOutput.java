@@ -0,0 +1,83 @@
+package org.schalm.util.helper.xml;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Collects characters in a reusable buffer that is written to a <code>Writer</code> when full.
+ *
+ * @version $Id$
+ */
+final class WriterOutput extends XmlOutput {
+    private final Writer out;
+    private final char[] buffer;
+    private int count = 0;
+
+    /**
+     * Creates a new output.
+     *
+     * @param out receives the characters
+     */
+    WriterOutput(Writer out) {
+        this.out = out;
+        this.buffer = new char[Utf8Output.BUFFER_SIZE];
+    }
+
+    @Override
+    void write(char c) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = c;
+    }
+
+    @Override
+    void write(CharSequence s, int start, int end) throws IOException {
+        int i = start;
+        while (i < end) {
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            int n = Math.min(end - i, buffer.length - count);
+            if (s instanceof String) {
+                ((String) s).getChars(i, i + n, buffer, count);
+                count += n;
+                i += n;
+            } else {
+                for (int stop = i + n; i < stop; i++) {
+                    buffer[count++] = s.charAt(i);
+                }
+            }
+        }
+    }
+
+    @Override
+    void write(char[] ch, int start, int end) throws IOException {
+        int length = end - start;
+        if (length >= buffer.length) {
+            flushBuffer();
+            out.write(ch, start, length);
+            return;
+        }
+        if (length > buffer.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(ch, start, buffer, count, length);
+        count += length;
+    }
+
+    @Override
+    void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+}
@@ -12,10 +12,18 @@
 package org.schalm.util.helper.xml;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import javax.xml.transform.Result;
@@ -24,20 +32,76 @@ import org.schalm.util.helper.string.StringHelper;
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
 import org.xml.sax.helpers.DefaultHandler;
 
 /**
- * A pretty-printing XML encoder.
+ * A pretty-printing XML encoder.<br />
+ * By default the document is collected in memory and returned by {@link #toString()}. Created with a target stream,
+ * writer or channel, the document is written while it is encoded, with the platform's line separator and without
+ * lines containing only whitespace, so it is never held in memory. The two modes differ in which lines they drop:
+ * {@link #toString()} removes every line without a character of [A-Za-z0-9_] like
+ * {@link StringHelper#deleteEmptyRows(String)}, so text lines such as <code>---</code> or
+ * <code>&ouml;&auml;&uuml;</code> are lost, while a target keeps every line that is not only whitespace.<br />
+ * As <code>LexicalHandler</code> the writer keeps comments outside of the document type declaration, which can be
+ * written with {@link #writeDoctype(String)}. Entities skipped by the parser are written as references.
  *
  * @author Lonnie Pryor
  * @version $Id: XMLWriter.java 158 2014-03-01 22:22:07Z cschalm $
  */
-public class XMLWriter extends DefaultHandler {
+public class XMLWriter extends DefaultHandler implements LexicalHandler {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String NEWLINE = "\r\n";
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
     /**
-     * The output stream to write to.
+     * The stream collecting the encoded document.
      */
-    private ByteArrayOutputStream output = null;
+    private ByteArrayOutputStream bytes = null;
+    /**
+     * The buffered output to write to.
+     */
+    private XmlOutput output = null;
+    /**
+     * True if the output is written to a target instead of being collected in memory.
+     */
+    private final boolean streaming;
+    /**
+     * Checks which characters the output charset can encode, null if it can encode all.
+     */
+    private final CharsetEncoder encoder;
+    /**
+     * True between the start and the end of the document type declaration.
+     */
+    private boolean inDtd = false;
+    /**
+     * A high surrogate at the end of text content, written with the low surrogate starting the next text content.
+     */
+    private char highSurrogate = 0;
+    /**
+     * True if a line break in text content has not been written yet, because the line may stay empty.
+     */
+    private boolean pendingLine = false;
+    /**
+     * True if the pending line is indented to the current level.
+     */
+    private boolean pendingIndent = false;
+    /**
+     * The whitespace of the pending line.
+     */
+    private final StringBuilder pendingWhitespace = new StringBuilder();
+    /**
+     * The XML version written in the XML declaration.
+     */
+    private String xmlVersion = "1.0";
+    /**
+     * The encoding written in the XML declaration.
+     */
+    private String encoding = "UTF-8";
+    /**
+     * The standalone value written in the XML declaration or null to omit it.
+     */
+    private Boolean standalone = null;
     /**
      * The character to use for indentation.
      */
@@ -80,7 +144,58 @@ public class XMLWriter extends DefaultHandler {
      * Creates a new XMLWriter.
      */
     public XMLWriter() {
-        this.output = new ByteArrayOutputStream();
+        this.bytes = new ByteArrayOutputStream();
+        this.output = new Utf8Output(bytes);
+        this.streaming = false;
+        this.encoder = null;
+    }
+
+    /**
+     * Creates a new XMLWriter encoding the document as UTF-8 to a stream.
+     *
+     * @param out receives the document, is flushed but not closed at the end of the document
+     */
+    public XMLWriter(OutputStream out) {
+        this.output = new Utf8Output(out);
+        this.streaming = true;
+        this.encoder = null;
+    }
+
+    /**
+     * Creates a new XMLWriter writing the document to a channel.
+     *
+     * @param channel receives the document encoded as UTF-8, is not closed at the end of the document
+     */
+    public XMLWriter(WritableByteChannel channel) {
+        this(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Creates a new XMLWriter writing the document to a writer.<br />
+     * The XML declaration states UTF-8 as encoding unless changed with
+     * {@link #setDeclaration(String, String, Boolean)}, so the writer should use it if the result is stored.
+     *
+     * @param out receives the document, is flushed but not closed at the end of the document
+     */
+    public XMLWriter(Writer out) {
+        this.output = new WriterOutput(out);
+        this.streaming = true;
+        this.encoder = null;
+    }
+
+    /**
+     * Creates a new XMLWriter writing the document to a writer that encodes it with a charset.<br />
+     * Characters of text content and attribute values the charset cannot encode are written as character references,
+     * like <code>&amp;#x20AC;</code>. Names, comments and processing instructions cannot contain references, so
+     * such characters there are passed to the writer, which should report them.
+     *
+     * @param out receives the document, is flushed but not closed at the end of the document
+     * @param charset the encoding of the writer
+     */
+    public XMLWriter(Writer out, Charset charset) {
+        this.output = new WriterOutput(out);
+        this.streaming = true;
+        this.encoder = charset.name().startsWith("UTF-") ? null : charset.newEncoder();
     }
 
     /**
@@ -112,6 +227,21 @@ public class XMLWriter extends DefaultHandler {
         this.deepIndentSize = deepIndentSize < 0 ? 0 : deepIndentSize;
     }
 
+    /**
+     * Sets the values of the XML declaration written at the start of the document.<br />
+     * The encoding is only written, the document is encoded as UTF-8 unless the writer given to the constructor
+     * uses the encoding.
+     *
+     * @param xmlVersion The XML version, null for 1.0.
+     * @param encoding The name of the encoding, null for UTF-8.
+     * @param standalone The standalone value or null to omit it.
+     */
+    public void setDeclaration(String xmlVersion, String encoding, Boolean standalone) {
+        this.xmlVersion = xmlVersion != null ? xmlVersion : "1.0";
+        this.encoding = encoding != null ? encoding : "UTF-8";
+        this.standalone = standalone;
+    }
+
     /**
      * Creates a TrAX result object that writes to this encoder.
      *
@@ -144,9 +274,23 @@ public class XMLWriter extends DefaultHandler {
         newPrefixes.clear();
         parentElementIncomplete = false;
         afterCDATA = false;
+        pendingLine = false;
+        highSurrogate = 0;
+        inDtd = false;
         try {
-            output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n".getBytes("UTF-8")); //$NON-NLS-1$
-        } catch (Exception e) {
+            output.write("<?xml version=\""); //$NON-NLS-1$
+            output.write(xmlVersion);
+            output.write("\" encoding=\""); //$NON-NLS-1$
+            output.write(encoding);
+            if (standalone != null) {
+                output.write("\" standalone=\""); //$NON-NLS-1$
+                output.write(standalone ? "yes" : "no"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            output.write("\"?>"); //$NON-NLS-1$
+            if (!streaming) {
+                output.write(NEWLINE);
+            }
+        } catch (IOException e) {
             throw new SAXException(e);
         }
     }
@@ -159,15 +303,15 @@ public class XMLWriter extends DefaultHandler {
     @Override
     public void endDocument() throws SAXException {
         try {
-            output.write("\r".getBytes("UTF-8"));
-            output.write("\n".getBytes("UTF-8"));
+            newLine();
+            output.finish();
             afterCDATA = false;
             parentElementIncomplete = false;
             newPrefixes.clear();
             prefixesByNamespaceURI.clear();
             namespaceURIsByPrefix.clear();
             elementDepth = 0;
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new SAXException(e);
         }
     }
@@ -206,15 +350,12 @@ public class XMLWriter extends DefaultHandler {
         try {
             ensureParentElementIsComplete();
             // Open the start tag.
-            output.write("\r".getBytes("UTF-8"));
-            output.write("\n".getBytes("UTF-8"));
-            indent();
-            output.write("<".getBytes("UTF-8"));
+            startLine();
+            output.write('<');
             writeName(uri, localName, name);
             // Write the prefix mappings.
             for (Iterator<String> i = newPrefixes.iterator(); i.hasNext();) {
-                output.write("\r".getBytes("UTF-8"));
-                output.write("\n".getBytes("UTF-8"));
+                newLine();
                 deepIndent();
                 String prefix = i.next();
                 String xmlns = stackedIndexPeek(namespaceURIsByPrefix, prefix);
@@ -230,15 +371,14 @@ public class XMLWriter extends DefaultHandler {
                 if ("http://www.w3.org/2000/xmlns/".equals(atts.getURI(i))) { //$NON-NLS-1$
                     continue;
                 }
-                output.write("\r".getBytes("UTF-8"));
-                output.write("\n".getBytes("UTF-8"));
+                newLine();
                 deepIndent();
                 writeNameValuePair(atts.getURI(i), atts.getLocalName(i), atts.getQName(i), atts.getValue(i));
             }
             parentElementIncomplete = true;
             afterCDATA = false;
             ++elementDepth;
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new SAXException(e);
         }
     }
@@ -253,18 +393,16 @@ public class XMLWriter extends DefaultHandler {
         try {
             --elementDepth;
             if (parentElementIncomplete) {
-                output.write(" />".getBytes("UTF-8")); //$NON-NLS-1$
+                output.write(" />"); //$NON-NLS-1$
                 parentElementIncomplete = false;
             } else {
-                output.write("\r".getBytes("UTF-8"));
-                output.write("\n".getBytes("UTF-8"));
-                indent();
-                output.write("</".getBytes("UTF-8")); //$NON-NLS-1$
+                startLine();
+                output.write("</"); //$NON-NLS-1$
                 writeName(uri, localName, name);
-                output.write(">".getBytes("UTF-8"));
+                output.write(">");
             }
             afterCDATA = false;
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new SAXException(e);
         }
     }
@@ -278,16 +416,14 @@ public class XMLWriter extends DefaultHandler {
     public void processingInstruction(String target, String data) throws SAXException {
         try {
             ensureParentElementIsComplete();
-            output.write("\r".getBytes("UTF-8"));
-            output.write("\n".getBytes("UTF-8"));
-            indent();
-            output.write("<?".getBytes("UTF-8")); //$NON-NLS-1$
-            output.write(target.getBytes("UTF-8"));
-            output.write(" ".getBytes("UTF-8"));
-            output.write(data.getBytes("UTF-8"));
-            output.write(" ?>".getBytes("UTF-8")); //$NON-NLS-1$
+            startLine();
+            output.write("<?"); //$NON-NLS-1$
+            output.write(target);
+            output.write(" ");
+            output.write(data);
+            output.write(" ?>"); //$NON-NLS-1$
             afterCDATA = false;
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new SAXException(e);
         }
     }
@@ -302,56 +438,158 @@ public class XMLWriter extends DefaultHandler {
         try {
             if (!afterCDATA) {
                 ensureParentElementIsComplete();
-                output.write("\r".getBytes("UTF-8"));
-                output.write("\n".getBytes("UTF-8"));
-                indent();
+                textLine(true);
             }
-            boolean hadCR = false;
-            for (int i = 0; i < length; ++i) {
-                char c = ch[start + i];
-                if (c == '\n' || hadCR) {
-                    hadCR = false;
-                    output.write("\r".getBytes("UTF-8"));
-                    output.write("\n".getBytes("UTF-8"));
-                    indent();
-                    if (c != '\n') {
-                        output.write(Character.toString(c).getBytes("UTF-8"));
+            int end = start + length;
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (start < end && Character.isLowSurrogate(ch[start])) {
+                    output.write(characterReference(Character.toCodePoint(high, ch[start++])));
+                } else {
+                    output.write(characterReference(high));
+                }
+            }
+            // Write runs of characters that need no escaping in one call.
+            int run = start;
+            for (int i = start; i < end; ++i) {
+                char c = ch[i];
+                if (c == '\n' || c == '\r') {
+                    output.write(ch, run, i);
+                    if (c == '\r' && i + 1 < end && ch[i + 1] == '\n') {
+                        ++i;
                     }
+                    textLine(c == '\n' || i + 1 < end);
+                    run = i + 1;
                 } else {
-                    switch (c) {
-                        case '\r':
-                            hadCR = true;
-                            break;
-                        case '\'':
-                            output.write("&apos;".getBytes("UTF-8"));
-                            break;
-                        case '"':
-                            output.write("&quot;".getBytes("UTF-8"));
-                            break;
-                        case '&':
-                            output.write("&amp;".getBytes("UTF-8"));
-                            break;
-                        case '<':
-                            output.write("&lt;".getBytes("UTF-8"));
-                            break;
-                        case '>':
-                            output.write("&gt;".getBytes("UTF-8"));
+                    if (pendingLine) {
+                        if (c == ' ' || c == '\t') {
+                            pendingWhitespace.append(c);
+                            run = i + 1;
+                            continue;
+                        }
+                        writePendingLine();
+                    }
+                    String entity = textEntity(c);
+                    int skip = 0;
+                    if (entity == null && !canEncode(c)) {
+                        if (Character.isHighSurrogate(c) && i + 1 == end) {
+                            // the low surrogate follows with the next text content
+                            output.write(ch, run, i);
+                            highSurrogate = c;
+                            run = end;
                             break;
-                        default:
-                            output.write(Character.toString(c).getBytes("UTF-8"));
+                        }
+                        if (Character.isHighSurrogate(c) && Character.isLowSurrogate(ch[i + 1])) {
+                            entity = characterReference(Character.toCodePoint(c, ch[i + 1]));
+                            skip = 1;
+                        } else {
+                            entity = characterReference(c);
+                        }
+                    }
+                    if (entity != null) {
+                        output.write(ch, run, i);
+                        output.write(entity);
+                        i += skip;
+                        run = i + 1;
                     }
                 }
             }
-            if (hadCR) {
-                output.write("\r".getBytes("UTF-8"));
-                output.write("\n".getBytes("UTF-8"));
-            }
+            output.write(ch, run, end);
             afterCDATA = true;
-        } catch (Exception e) {
+        } catch (IOException e) {
             throw new SAXException(e);
         }
     }
 
+    /**
+     * Starts a new line in text content. When streaming, the line is only written once it gets visible content.
+     *
+     * @param indent True to indent the new line.
+     */
+    private void textLine(boolean indent) throws IOException {
+        if (streaming) {
+            pendingLine = true;
+            pendingIndent = indent;
+            pendingWhitespace.setLength(0);
+        } else {
+            output.write(NEWLINE);
+            if (indent) {
+                indent();
+            }
+        }
+    }
+
+    /**
+     * Writes the pending line break with its indentation and whitespace.
+     */
+    private void writePendingLine() throws IOException {
+        pendingLine = false;
+        output.write(LINE_SEPARATOR);
+        if (pendingIndent) {
+            indent();
+        }
+        output.write(pendingWhitespace, 0, pendingWhitespace.length());
+    }
+
+    /**
+     * Writes a line break, discarding a pending line of whitespace.
+     */
+    private void newLine() throws IOException {
+        pendingLine = false;
+        output.write(streaming ? LINE_SEPARATOR : NEWLINE);
+    }
+
+    /**
+     * Writes a line break and indents to the current level.
+     */
+    private void startLine() throws IOException {
+        newLine();
+        indent();
+    }
+
+    /**
+     * Returns the entity to write for a character of text content.
+     *
+     * @param c The character to write.
+     * @return The entity or null, if the character is written as it is.
+     */
+    private static String textEntity(char c) {
+        switch (c) {
+            case '\'':
+                return "&apos;";
+            case '"':
+                return "&quot;";
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns true if the output charset can encode a character.
+     *
+     * @param c The character to write.
+     */
+    private boolean canEncode(char c) {
+        return encoder == null || c < 0x80 || encoder.canEncode(c);
+    }
+
+    /**
+     * Returns the hexadecimal character reference for a code point.
+     *
+     * @param codePoint The code point to write.
+     * @return The character reference.
+     */
+    private static String characterReference(int codePoint) {
+        return "&#x" + Integer.toHexString(codePoint).toUpperCase(Locale.ENGLISH) + ';';
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -369,20 +607,133 @@ public class XMLWriter extends DefaultHandler {
      */
     @Override
     public void skippedEntity(String name) throws SAXException {
-        // Ignore skipped entities.
+        if (name.startsWith("%") || name.startsWith("[")) {
+            // parameter entities and the external subset belong to the document type declaration
+            return;
+        }
+        try {
+            if (!afterCDATA) {
+                ensureParentElementIsComplete();
+                textLine(true);
+            }
+            if (pendingLine) {
+                writePendingLine();
+            }
+            output.write('&');
+            output.write(name);
+            output.write(';');
+            afterCDATA = true;
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Writes a document type declaration as it is, for example the text of a StAX <code>DTD</code> event. It must be
+     * called after the start of the document and before the document element.
+     *
+     * @param declaration The complete declaration, including the internal subset.
+     * @throws SAXException
+     */
+    public void writeDoctype(String declaration) throws SAXException {
+        try {
+            newLine();
+            output.write(declaration);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.xml.sax.ext.LexicalHandler#comment(char[], int, int)
+     */
+    @Override
+    public void comment(char[] ch, int start, int length) throws SAXException {
+        if (inDtd) {
+            return;
+        }
+        try {
+            ensureParentElementIsComplete();
+            startLine();
+            output.write("<!--"); //$NON-NLS-1$
+            output.write(ch, start, start + length);
+            output.write("-->"); //$NON-NLS-1$
+            afterCDATA = false;
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.xml.sax.ext.LexicalHandler#startDTD(java.lang.String, java.lang.String, java.lang.String)
+     */
+    @Override
+    public void startDTD(String name, String publicId, String systemId) throws SAXException {
+        // The declaration is not complete without its internal subset, see writeDoctype.
+        inDtd = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.xml.sax.ext.LexicalHandler#endDTD()
+     */
+    @Override
+    public void endDTD() throws SAXException {
+        inDtd = false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.xml.sax.ext.LexicalHandler#startEntity(java.lang.String)
+     */
+    @Override
+    public void startEntity(String name) throws SAXException {
+        // The replacement text is written.
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.xml.sax.ext.LexicalHandler#endEntity(java.lang.String)
+     */
+    @Override
+    public void endEntity(String name) throws SAXException {
+        // The replacement text is written.
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.xml.sax.ext.LexicalHandler#startCDATA()
+     */
+    @Override
+    public void startCDATA() throws SAXException {
+        // CDATA sections are written as escaped text.
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.xml.sax.ext.LexicalHandler#endCDATA()
+     */
+    @Override
+    public void endCDATA() throws SAXException {
+        // CDATA sections are written as escaped text.
     }
 
     /**
      * Ensures that the ">" character is written to close the parent element
      * start tag if it is still open.
      */
-    private void ensureParentElementIsComplete() {
+    private void ensureParentElementIsComplete() throws IOException {
         if (parentElementIncomplete) {
-            try {
-                output.write(">".getBytes("UTF-8"));
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            output.write('>');
             parentElementIncomplete = false;
         }
     }
@@ -390,29 +741,21 @@ public class XMLWriter extends DefaultHandler {
     /**
      * Intents to the current level.
      */
-    private void indent() throws SAXException {
-        try {
-            for (int i = 0; i < elementDepth; ++i) {
-                for (int j = 0; j < indentSize; ++j) {
-                    output.write(Character.toString(indentCharacter).getBytes("UTF-8"));
-                }
+    private void indent() throws IOException {
+        for (int i = 0; i < elementDepth; ++i) {
+            for (int j = 0; j < indentSize; ++j) {
+                output.write(indentCharacter);
             }
-        } catch (Exception e) {
-            throw new SAXException(e);
         }
     }
 
     /**
      * Intents to the current level plus the deep indent.
      */
-    private void deepIndent() throws SAXException {
-        try {
-            indent();
-            for (int i = 0; i < deepIndentSize; ++i) {
-                output.write(Character.toString(deepIndentCharacter).getBytes("UTF-8"));
-            }
-        } catch (Exception e) {
-            throw new SAXException(e);
+    private void deepIndent() throws IOException {
+        indent();
+        for (int i = 0; i < deepIndentSize; ++i) {
+            output.write(deepIndentCharacter);
         }
     }
 
@@ -424,28 +767,24 @@ public class XMLWriter extends DefaultHandler {
      * @param qualifiedName The qualified name of the element or an empty
      * string.
      */
-    private void writeName(String uri, String localName, String qualifiedName) throws SAXException {
-        try {
-            if (uri == null || uri.length() == 0) {
-                if (qualifiedName == null || qualifiedName.length() == 0) {
-                    output.write(localName.getBytes("UTF-8"));
-                } else {
-                    output.write(qualifiedName.getBytes("UTF-8"));
-                }
-            } else if (localName == null || localName.length() == 0) {
-                output.write(qualifiedName.getBytes("UTF-8"));
+    private void writeName(String uri, String localName, String qualifiedName) throws IOException {
+        if (uri == null || uri.length() == 0) {
+            if (qualifiedName == null || qualifiedName.length() == 0) {
+                output.write(localName);
             } else {
-                String prefix = stackedIndexPeek(prefixesByNamespaceURI, uri);
-                if (prefix == null || prefix.length() == 0) {
-                    output.write(localName.getBytes("UTF-8"));
-                } else {
-                    output.write(prefix.getBytes("UTF-8"));
-                    output.write(":".getBytes("UTF-8"));
-                    output.write(localName.getBytes("UTF-8"));
-                }
+                output.write(qualifiedName);
+            }
+        } else if (localName == null || localName.length() == 0) {
+            output.write(qualifiedName);
+        } else {
+            String prefix = stackedIndexPeek(prefixesByNamespaceURI, uri);
+            if (prefix == null || prefix.length() == 0) {
+                output.write(localName);
+            } else {
+                output.write(prefix);
+                output.write(':');
+                output.write(localName);
             }
-        } catch (Exception e) {
-            throw new SAXException(e);
         }
     }
 
@@ -457,35 +796,34 @@ public class XMLWriter extends DefaultHandler {
      * @param qualifiedName The qualified name of the element or an empty
      * string.
      */
-    private void writeNameValuePair(String uri, String localName, String qualifiedName, String value) throws SAXException {
-        try {
-            writeName(uri, localName, qualifiedName);
-            output.write("=".getBytes("UTF-8"));
-            output.write("\"".getBytes("UTF-8"));
-            if (value != null) {
-                for (int i = 0; i < value.length(); i++) {
-                    switch (value.charAt(i)) {
-                        case '"':
-                            output.write("&quot;".getBytes("UTF-8"));
-                            break;
-                        case '&':
-                            output.write("&amp;".getBytes("UTF-8"));
-                            break;
-                        case '<':
-                            output.write("&lt;".getBytes("UTF-8"));
-                            break;
-                        case '>':
-                            output.write("&gt;".getBytes("UTF-8"));
-                            break;
-                        default:
-                            output.write(Character.toString(value.charAt(i)).getBytes("UTF-8"));
+    private void writeNameValuePair(String uri, String localName, String qualifiedName, String value) throws IOException {
+        writeName(uri, localName, qualifiedName);
+        output.write("=\"");
+        if (value != null) {
+            int run = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                String entity = c == '\'' ? null : textEntity(c);
+                int skip = 0;
+                if (entity == null && !canEncode(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                            && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        entity = characterReference(Character.toCodePoint(c, value.charAt(i + 1)));
+                        skip = 1;
+                    } else {
+                        entity = characterReference(c);
                     }
                 }
+                if (entity != null) {
+                    output.write(value, run, i);
+                    output.write(entity);
+                    i += skip;
+                    run = i + 1;
+                }
             }
-            output.write("\"".getBytes("UTF-8"));
-        } catch (Exception e) {
-            throw new SAXException(e);
+            output.write(value, run, value.length());
         }
+        output.write('"');
     }
 
     /**
@@ -592,9 +930,33 @@ public class XMLWriter extends DefaultHandler {
         }
     }
 
+    /**
+     * Writes all buffered output to the target and flushes it.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    /**
+     * Returns the document collected in memory, without lines that contain no character of [A-Za-z0-9_], see
+     * {@link StringHelper#deleteEmptyRows(String)}. Unlike the output written to a target this also drops text lines
+     * of only punctuation or non-ASCII letters.
+     *
+     * @return the document or the default representation, if the document is written to a target
+     */
     @Override
     public String toString() {
-        return StringHelper.deleteEmptyRows(new String(output.toByteArray()));
+        if (streaming) {
+            return super.toString();
+        }
+        try {
+            output.flushBuffer();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return StringHelper.deleteEmptyRows(new String(bytes.toByteArray(), UTF8));
     }
 
 }
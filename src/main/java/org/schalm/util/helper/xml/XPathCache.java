@@ -0,0 +1,290 @@
+package org.schalm.util.helper.xml;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import org.schalm.util.helper.cache.LruCache;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Thread-safe evaluation of XPath expressions that are compiled only once.<br />
+ * Compiled expressions are kept in a {@link LruCache} keyed by the expression and the namespace context. Since an
+ * <code>XPathExpression</code> must not be used by two threads at the same time, every entry holds a pool of compiled
+ * copies, so concurrent evaluations of the same expression never wait for each other. Namespace contexts are compared
+ * with <code>equals</code>, which usually means that the same instance has to be passed to hit the cache.
+ *
+ * @version $Id$
+ */
+public final class XPathCache {
+    private final LruCache<Key, Compiled> cache;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxEntries maximum number of distinct expressions kept
+     */
+    public XPathCache(int maxEntries) {
+        this.cache = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * Evaluate an expression and return the result as the given type.
+     *
+     * @param expression the XPath expression
+     * @param namespaces resolves the prefixes used in the expression, may be null
+     * @param item the context node or document
+     * @param returnType one of the types defined in <code>XPathConstants</code>
+     * @return the result of the expression
+     * @throws XPathExpressionException if the expression cannot be compiled or evaluated
+     */
+    public Object evaluate(String expression, NamespaceContext namespaces, Object item, QName returnType)
+            throws XPathExpressionException {
+        Compiled compiled = lookup(expression, namespaces);
+        XPathExpression xpathExpression = compiled.borrow();
+        try {
+            return xpathExpression.evaluate(item, returnType);
+        } finally {
+            compiled.release(xpathExpression);
+        }
+    }
+
+    /**
+     * Evaluate an expression returning nodes.
+     *
+     * @param expression
+     * @param item the context node or document
+     * @return the matching nodes
+     * @throws XPathExpressionException
+     */
+    public NodeList evaluateNodeSet(String expression, Object item) throws XPathExpressionException {
+        return evaluateNodeSet(expression, null, item);
+    }
+
+    /**
+     * Evaluate an expression returning nodes.
+     *
+     * @param expression
+     * @param namespaces resolves the prefixes used in the expression, may be null
+     * @param item the context node or document
+     * @return the matching nodes
+     * @throws XPathExpressionException
+     */
+    public NodeList evaluateNodeSet(String expression, NamespaceContext namespaces, Object item)
+            throws XPathExpressionException {
+        return (NodeList) evaluate(expression, namespaces, item, XPathConstants.NODESET);
+    }
+
+    /**
+     * Evaluate an expression returning a single node.
+     *
+     * @param expression
+     * @param item the context node or document
+     * @return the first matching node or null
+     * @throws XPathExpressionException
+     */
+    public Node evaluateNode(String expression, Object item) throws XPathExpressionException {
+        return evaluateNode(expression, null, item);
+    }
+
+    /**
+     * Evaluate an expression returning a single node.
+     *
+     * @param expression
+     * @param namespaces resolves the prefixes used in the expression, may be null
+     * @param item the context node or document
+     * @return the first matching node or null
+     * @throws XPathExpressionException
+     */
+    public Node evaluateNode(String expression, NamespaceContext namespaces, Object item)
+            throws XPathExpressionException {
+        return (Node) evaluate(expression, namespaces, item, XPathConstants.NODE);
+    }
+
+    /**
+     * Evaluate an expression returning a string.
+     *
+     * @param expression
+     * @param item the context node or document
+     * @return the string value of the result
+     * @throws XPathExpressionException
+     */
+    public String evaluateString(String expression, Object item) throws XPathExpressionException {
+        return evaluateString(expression, null, item);
+    }
+
+    /**
+     * Evaluate an expression returning a string.
+     *
+     * @param expression
+     * @param namespaces resolves the prefixes used in the expression, may be null
+     * @param item the context node or document
+     * @return the string value of the result
+     * @throws XPathExpressionException
+     */
+    public String evaluateString(String expression, NamespaceContext namespaces, Object item)
+            throws XPathExpressionException {
+        return (String) evaluate(expression, namespaces, item, XPathConstants.STRING);
+    }
+
+    /**
+     * Evaluate an expression returning a number.
+     *
+     * @param expression
+     * @param item the context node or document
+     * @return the numeric value of the result, NaN if it is not a number
+     * @throws XPathExpressionException
+     */
+    public double evaluateNumber(String expression, Object item) throws XPathExpressionException {
+        return evaluateNumber(expression, null, item);
+    }
+
+    /**
+     * Evaluate an expression returning a number.
+     *
+     * @param expression
+     * @param namespaces resolves the prefixes used in the expression, may be null
+     * @param item the context node or document
+     * @return the numeric value of the result, NaN if it is not a number
+     * @throws XPathExpressionException
+     */
+    public double evaluateNumber(String expression, NamespaceContext namespaces, Object item)
+            throws XPathExpressionException {
+        return (Double) evaluate(expression, namespaces, item, XPathConstants.NUMBER);
+    }
+
+    /**
+     * Evaluate an expression returning a boolean.
+     *
+     * @param expression
+     * @param item the context node or document
+     * @return the boolean value of the result
+     * @throws XPathExpressionException
+     */
+    public boolean evaluateBoolean(String expression, Object item) throws XPathExpressionException {
+        return evaluateBoolean(expression, null, item);
+    }
+
+    /**
+     * Evaluate an expression returning a boolean.
+     *
+     * @param expression
+     * @param namespaces resolves the prefixes used in the expression, may be null
+     * @param item the context node or document
+     * @return the boolean value of the result
+     * @throws XPathExpressionException
+     */
+    public boolean evaluateBoolean(String expression, NamespaceContext namespaces, Object item)
+            throws XPathExpressionException {
+        return (Boolean) evaluate(expression, namespaces, item, XPathConstants.BOOLEAN);
+    }
+
+    /**
+     * @return number of cached expressions
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return number of evaluations that found a cached expression
+     */
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * @return number of evaluations that had to compile the expression
+     */
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * Remove all cached expressions.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    private Compiled lookup(String expression, NamespaceContext namespaces) throws XPathExpressionException {
+        Key key = new Key(expression, namespaces);
+        Compiled compiled = cache.get(key);
+        if (compiled == null) {
+            // compile before caching, so invalid expressions are not kept
+            compiled = new Compiled(key);
+            compiled.release(compiled.compile());
+            cache.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    private static final class Key {
+        private final String expression;
+        private final NamespaceContext namespaces;
+
+        Key(String expression, NamespaceContext namespaces) {
+            if (expression == null) {
+                throw new NullPointerException("expression");
+            }
+            this.expression = expression;
+            this.namespaces = namespaces;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return expression.equals(other.expression)
+                    && (namespaces == null ? other.namespaces == null : namespaces.equals(other.namespaces));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * expression.hashCode() + (namespaces == null ? 0 : namespaces.hashCode());
+        }
+
+    }
+
+    /**
+     * Compiled copies of one expression, at most one per thread evaluating it concurrently.
+     */
+    private static final class Compiled {
+        private final Key key;
+        private final Queue<XPathExpression> idle = new ConcurrentLinkedQueue<>();
+
+        Compiled(Key key) {
+            this.key = key;
+        }
+
+        XPathExpression compile() throws XPathExpressionException {
+            XPath xpath = XmlPools.borrowXPath();
+            try {
+                if (key.namespaces != null) {
+                    xpath.setNamespaceContext(key.namespaces);
+                }
+                return xpath.compile(key.expression);
+            } finally {
+                XmlPools.release(xpath);
+            }
+        }
+
+        XPathExpression borrow() throws XPathExpressionException {
+            XPathExpression expression = idle.poll();
+            return expression != null ? expression : compile();
+        }
+
+        void release(XPathExpression expression) {
+            idle.add(expression);
+        }
+
+    }
+
+}
@@ -0,0 +1,25 @@
+package org.schalm.util.helper.xml;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Receives the values matched by a {@link StreamingXPath}.
+ *
+ * @version $Id$
+ */
+public interface XPathMatchHandler {
+
+    /**
+     * Called for every match as soon as its value is complete. Matches are therefore passed in the order they are
+     * completed, not in document order: an attribute is complete at the start of its element, but the text of an
+     * element only at its end, after the matches nested in it.
+     *
+     * @param expression the expression that matched, as passed to {@link StreamingXPath}
+     * @param value the text content of a matched element, the value of a matched attribute or the text of the
+     * matched text() nodes
+     * @return true to continue, false to stop parsing
+     * @throws SAXException to abort parsing with an error
+     */
+    boolean match(String expression, String value) throws SAXException;
+
+}
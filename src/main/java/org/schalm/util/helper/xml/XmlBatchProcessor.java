@@ -0,0 +1,349 @@
+package org.schalm.util.helper.xml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Indents or checks many XML files concurrently.<br />
+ * Every file is processed as a separate task of the given executor, with at most a bounded number of tasks queued
+ * ahead of the result collected last. A file that cannot be processed does not stop the batch; its error is recorded
+ * in its {@link FileResult}. Files are indented in place with {@link XmlHelper#indentXmlFile(File, File)}, so each is
+ * replaced atomically and only when it could be indented completely. Comments, processing instructions, the document
+ * type declaration and entity references are kept, but whitespace between elements and around text is replaced by
+ * the indentation and CDATA sections become escaped text, see there. Both operations read the files the same way:
+ * neither external DTDs nor external entities are read, so a file passes the check exactly when it can be indented.
+ *
+ * @version $Id$
+ */
+public final class XmlBatchProcessor {
+    private static final Log log = LogFactory.getLog(XmlBatchProcessor.class);
+    private static final int BUFFER_SIZE = 0x10000;
+    private static final String EXTENSION = ".xml";
+    private final ExecutorService executor;
+    private final int window;
+
+    /**
+     * What to do with every file.
+     */
+    public enum Operation {
+        /**
+         * Indent the file in place.
+         */
+        INDENT,
+        /**
+         * Only check that the file is well-formed.
+         */
+        CHECK
+    }
+
+    /**
+     * Creates a new processor.
+     *
+     * @param executor runs the processing of the files
+     */
+    public XmlBatchProcessor(ExecutorService executor) {
+        this.executor = executor;
+        this.window = 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Process all files with the extension <code>.xml</code> in a directory tree.
+     *
+     * @param directory the root of the tree
+     * @param operation
+     * @return the results
+     * @throws IOException if the directory cannot be read or the processing was interrupted
+     */
+    public BatchResult process(File directory, Operation operation) throws IOException {
+        return process(listXmlFiles(directory), operation);
+    }
+
+    /**
+     * Process a list of files.
+     *
+     * @param files
+     * @param operation
+     * @return the results in the order of the files
+     * @throws IOException if the processing was interrupted
+     */
+    public BatchResult process(List<File> files, final Operation operation) throws IOException {
+        long start = System.nanoTime();
+        List<FileResult> results = new ArrayList<>(files.size());
+        ArrayDeque<Future<FileResult>> pending = new ArrayDeque<>();
+        try {
+            for (final File file : files) {
+                pending.add(executor.submit(new Callable<FileResult>() {
+                    @Override
+                    public FileResult call() {
+                        return processFile(file, operation);
+                    }
+
+                }));
+                while (pending.size() > window) {
+                    results.add(await(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                results.add(await(pending.poll()));
+            }
+        } finally {
+            for (Future<FileResult> future : pending) {
+                future.cancel(true);
+            }
+        }
+        BatchResult result = new BatchResult(results, System.nanoTime() - start);
+        if (log.isDebugEnabled()) {
+            log.debug(operation + ": " + result);
+        }
+        return result;
+    }
+
+    /**
+     * List all files with the extension <code>.xml</code> in a directory tree.
+     *
+     * @param directory the root of the tree
+     * @return the files sorted by path
+     * @throws IOException
+     */
+    public static List<File> listXmlFiles(File directory) throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(EXTENSION)) {
+                    paths.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+        Collections.sort(paths);
+        List<File> files = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            files.add(path.toFile());
+        }
+        return files;
+    }
+
+    private static FileResult processFile(File file, Operation operation) {
+        long start = System.nanoTime();
+        long bytes = file.length();
+        String error = null;
+        try {
+            if (operation == Operation.INDENT) {
+                XmlHelper.indentXmlFile(file, file);
+            } else {
+                check(file);
+            }
+        } catch (XMLStreamException e) {
+            Location location = e.getLocation();
+            error = location != null ? location.getLineNumber() + ":" + location.getColumnNumber() + ": " + e.getMessage()
+                    : e.getMessage();
+        } catch (Exception e) {
+            error = e.toString();
+        }
+        return new FileResult(file, bytes, System.nanoTime() - start, error);
+    }
+
+    /**
+     * Read a file like {@link XmlHelper#indentXmlFile(File, File)} without writing it.
+     */
+    private static void check(File file) throws Exception {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            XMLStreamReader reader = XmlHelper.createIndentReader(in);
+            try {
+                StaxToSax.pump(reader, new DefaultHandler());
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static FileResult await(Future<FileResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for file processing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error processing file: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * The outcome of processing a single file.
+     */
+    public static final class FileResult {
+        private final File file;
+        private final long bytes;
+        private final long nanos;
+        private final String error;
+
+        FileResult(File file, long bytes, long nanos, String error) {
+            this.file = file;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        /**
+         * @return the processed file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the size of the file before processing
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the processing time in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return true, if the file was processed without error
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return the error message, prefixed with line and column where known, or null on success
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return file + (error == null ? ": OK" : ": " + error);
+        }
+
+    }
+
+    /**
+     * The results of all files of a batch and aggregate statistics.
+     */
+    public static final class BatchResult {
+        private final List<FileResult> results;
+        private final long elapsedNanos;
+        private final int failed;
+        private final long bytes;
+
+        BatchResult(List<FileResult> results, long elapsedNanos) {
+            this.results = Collections.unmodifiableList(results);
+            this.elapsedNanos = elapsedNanos;
+            int failures = 0;
+            long total = 0;
+            for (FileResult result : results) {
+                if (!result.isSuccess()) {
+                    failures++;
+                }
+                total += result.getBytes();
+            }
+            this.failed = failures;
+            this.bytes = total;
+        }
+
+        /**
+         * @return the results of all files in the order they were given
+         */
+        public List<FileResult> getResults() {
+            return results;
+        }
+
+        /**
+         * @return the results of the files that could not be processed
+         */
+        public List<FileResult> getFailures() {
+            List<FileResult> failures = new ArrayList<>(failed);
+            for (FileResult result : results) {
+                if (!result.isSuccess()) {
+                    failures.add(result);
+                }
+            }
+            return failures;
+        }
+
+        /**
+         * @return number of files processed without error
+         */
+        public int getSucceeded() {
+            return results.size() - failed;
+        }
+
+        /**
+         * @return number of files with an error
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return total size of all files
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return wall clock time of the batch in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return files processed per second of wall clock time
+         */
+        public double getFilesPerSecond() {
+            return elapsedNanos > 0 ? results.size() * 1e9 / elapsedNanos : 0;
+        }
+
+        /**
+         * @return bytes processed per second of wall clock time
+         */
+        public double getBytesPerSecond() {
+            return elapsedNanos > 0 ? bytes * 1e9 / elapsedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ENGLISH, "%d files, %d failed, %d bytes in %.3f s (%.1f files/s, %.1f MB/s)",
+                    results.size(), failed, bytes, elapsedNanos / 1e9, getFilesPerSecond(),
+                    getBytesPerSecond() / (1024 * 1024));
+        }
+
+    }
+
+}
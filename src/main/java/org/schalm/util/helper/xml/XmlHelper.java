@@ -1,39 +1,45 @@
 package org.schalm.util.helper.xml;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXResult;
-import javax.xml.transform.sax.SAXTransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import org.schalm.util.helper.file.ChannelTextWriter;
 import org.schalm.util.helper.file.FileHelper;
+import org.schalm.util.helper.file.TextProducer;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.bootstrap.DOMImplementationRegistry;
 import org.w3c.dom.ls.DOMImplementationLS;
 import org.w3c.dom.ls.LSOutput;
 import org.w3c.dom.ls.LSSerializer;
@@ -50,98 +56,50 @@ import org.xml.sax.SAXException;
 public final class XmlHelper {
 
     private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final int STREAM_BUFFER_SIZE = 0x10000;
+    /**
+     * Reads documents for indentation: the document type declaration is parsed but no external DTD or entity is read,
+     * and entity references are reported instead of being replaced.
+     */
+    private static final XMLInputFactory INDENT_FACTORY = XMLInputFactory.newInstance();
+    /**
+     * Maximum number of compiled XPath expressions kept by the query methods.
+     */
+    public static final int XPATH_CACHE_SIZE = 1024;
+    private static final XPathCache XPATH_CACHE = new XPathCache(XPATH_CACHE_SIZE);
+
+    static {
+        INDENT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+        INDENT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        INDENT_FACTORY.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+        INDENT_FACTORY.setXMLResolver(new XMLResolver() {
+            @Override
+            public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) {
+                // an external DTD is not read
+                return new ByteArrayInputStream(new byte[0]);
+            }
+
+        });
+    }
 
     private XmlHelper() {
         // utility class
     }
 
     /**
-     * Converts the specified node to a string, recursively.
+     * Converts the specified node to a string.
      *
      * @param node
      * @return a textual representation of the node
+     * @see DomSerializer
      */
     public static String domTree2String(final Node node) {
-        XmlHelper xmlHelper = new XmlHelper();
-        Helper helper = new Helper();
-        return xmlHelper.domTree2String(node, helper);
-    }
-
-    private static class Helper {
-
-        private boolean breakLine;
-
-        public Helper() {
-        }
-
-        public boolean isBreakLine() {
-            return breakLine;
-        }
-
-        public void setBreakLine(boolean breakLine) {
-            this.breakLine = breakLine;
-        }
-
-    }
-
-    private String domTree2String(final Node node, Helper helper) {
         StringBuilder sb = new StringBuilder();
-        int type = node.getNodeType();
-        switch (type) {
-            case Node.DOCUMENT_NODE:
-                sb.append("<?xml version=\"1.0\"?>");
-                sb.append(domTree2String(((Document) node).getDocumentElement(), helper));
-                break;
-            case Node.ELEMENT_NODE:
-                sb.append(XmlHelper.LINE_SEPARATOR).append("<").append(node.getNodeName());
-                NamedNodeMap attrs = node.getAttributes();
-                for (int i = 0; i < attrs.getLength(); i++) {
-                    Node attr = attrs.item(i);
-                    sb.append(" ").append(attr.getNodeName()).append("=\"").append(attr.getNodeValue()).append("\"");
-                }
-                sb.append(">");
-                helper.setBreakLine(false);
-                NodeList children = node.getChildNodes();
-                if (children != null) {
-                    int len = children.getLength();
-                    for (int i = 0; i < len; i++) {
-                        sb.append(domTree2String(children.item(i), helper));
-                    }
-                }
-                break;
-            case Node.ENTITY_REFERENCE_NODE:
-                sb.append("&").append(node.getNodeName()).append(";");
-                helper.setBreakLine(false);
-                break;
-            case Node.CDATA_SECTION_NODE:
-                sb.append("<![CDATA[").append(node.getNodeValue()).append("]]>");
-                helper.setBreakLine(false);
-                break;
-            case Node.TEXT_NODE:
-                sb.append(node.getNodeValue());
-                helper.setBreakLine(false);
-                break;
-            case Node.PROCESSING_INSTRUCTION_NODE:
-                sb.append("<?").append(node.getNodeName());
-                String data = node.getNodeValue();
-                sb.append(" ").append(data);
-                sb.append("?>").append(XmlHelper.LINE_SEPARATOR);
-                break;
-            case Node.COMMENT_NODE:
-                sb.append("<!--").append(node.getNodeValue()).append("-->");
-                helper.setBreakLine(false);
-                break;
-            default:
-                sb.append(node.getNodeValue());
-                helper.setBreakLine(false);
-                break;
-        }
-        if (type == Node.ELEMENT_NODE) {
-            if (helper.isBreakLine()) {
-                sb.append(XmlHelper.LINE_SEPARATOR);
-            }
-            sb.append("</").append(node.getNodeName()).append(">");
-            helper.setBreakLine(true);
+        try {
+            DomSerializer.write(node, sb);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
         }
         return sb.toString();
     }
@@ -156,7 +114,9 @@ public final class XmlHelper {
      * @throws IOException
      */
     public static Document readXmlFile(File file) throws ParserConfigurationException, SAXException, IOException {
-        return readXmlStream(new FileInputStream(file));
+        try (InputStream stream = new FileInputStream(file)) {
+            return readXmlStream(stream);
+        }
     }
 
     /**
@@ -169,26 +129,32 @@ public final class XmlHelper {
      * @throws IOException
      */
     public static Document readXmlStream(InputStream stream) throws ParserConfigurationException, SAXException, IOException {
-        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        Document domDoc = builder.parse(stream);
-
-        return domDoc;
+        DocumentBuilder builder = XmlPools.borrowDocumentBuilder();
+        try {
+            return builder.parse(stream);
+        } finally {
+            XmlPools.release(builder);
+        }
     }
 
     /**
-     * Writes the document to the file<br/>.
+     * Writes the document to the file<br/>. The text is streamed to disk in UTF-8 as by
+     * {@link #domTree2String(Node)} and replaces the file atomically when complete.
      *
      * @param doc
      * @param file
      * @throws IOException
      */
-    public static void saveXmlFile(Document doc, File file) throws IOException {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-            String content = "<?xml version=\"1.0\"?>";
-            content += XmlHelper.domTree2String(doc.getDocumentElement());
-            bw.write(content, 0, content.length());
-            bw.flush();
-        }
+    public static void saveXmlFile(final Document doc, File file) throws IOException {
+        FileHelper.writeTextFile(file, StandardCharsets.UTF_8, true, new TextProducer() {
+            @Override
+            public void writeTo(Writer out) throws IOException {
+                Writer buffered = new BufferedWriter(out, Utf8Output.BUFFER_SIZE);
+                DomSerializer.write(doc, buffered);
+                buffered.flush();
+            }
+
+        });
     }
 
     /**
@@ -250,25 +216,121 @@ public final class XmlHelper {
     }
 
     /**
-     * Performs a xpath query on a document and returns the matching nodelist.
+     * Get the values of several tags and tag attributes of a document in one traversal<br/>. A name
+     * <code>tag</code> selects the text of the first element of the tag up to its first child element, joining text
+     * and CDATA sections and skipping comments and processing instructions; unlike
+     * {@link #getTagValue(Document, String)} this is not just the value of the first child node. A name
+     * <code>tag@attribute</code> is resolved like {@link #getTagAttributeValue(Document, String, String)}. The
+     * traversal ends as soon as the first element of every requested tag has been seen.
      *
      * @param doc
-     * @param xpathQuery
-     * @return nodelist of matches
-     * @throws Exception
+     * @param names the requested tag and attribute names
+     * @return the trimmed values by name in the order of the names, the empty string where a tag, attribute or value
+     * does not exist
      */
-    public static NodeList query(Document doc, String xpathQuery) throws Exception {
-        NodeList result = null;
-        // prepare XPath
-        XPath xpath = XPathFactory.newInstance().newXPath();
+    public static Map<String, String> getTagValues(Document doc, Collection<String> names) {
+        TagSelection selection = new TagSelection(names);
+        Node root = doc.getDocumentElement();
+        Node node = root;
+        while (node != null && !selection.isComplete()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                List<String[]> requests = selection.take(node.getNodeName());
+                if (requests != null) {
+                    for (String[] request : requests) {
+                        if (request[1] == null) {
+                            selection.put(request[0], leadingText(node));
+                        } else {
+                            Node attribute = node.getAttributes().getNamedItem(request[1]);
+                            selection.put(request[0], attribute != null ? attribute.getNodeValue() : null);
+                        }
+                    }
+                }
+            }
+            // next node in document order
+            Node next = node.getFirstChild();
+            if (next == null) {
+                while (node != root && node.getNextSibling() == null) {
+                    node = node.getParentNode();
+                }
+                next = node != root ? node.getNextSibling() : null;
+            }
+            node = next;
+        }
+        return selection.values();
+    }
 
+    /**
+     * The text of an element before its first child element, as {@link TagValueHandler} collects it from SAX events.
+     */
+    private static String leadingText(Node element) {
+        StringBuilder text = new StringBuilder();
+        for (Node child = element.getFirstChild(); child != null && child.getNodeType() != Node.ELEMENT_NODE;
+                child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                text.append(child.getNodeValue());
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Get the values of several tags and tag attributes from a file with a SAX parser, which stops reading as soon as
+     * the first element of every requested tag has been seen. The names and results are the same as for
+     * {@link #getTagValues(Document, Collection)}.
+     *
+     * @param file
+     * @param names the requested tag and attribute names
+     * @return the trimmed values by name in the order of the names
+     * @throws IOException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public static Map<String, String> getTagValues(File file, Collection<String> names)
+            throws IOException, SAXException, ParserConfigurationException {
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER_SIZE)) {
+            return getTagValues(stream, names);
+        }
+    }
+
+    /**
+     * Get the values of several tags and tag attributes from a stream with a SAX parser, which stops reading as soon as
+     * the first element of every requested tag has been seen. The names and results are the same as for
+     * {@link #getTagValues(Document, Collection)}.
+     *
+     * @param stream
+     * @param names the requested tag and attribute names
+     * @return the trimmed values by name in the order of the names
+     * @throws IOException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public static Map<String, String> getTagValues(InputStream stream, Collection<String> names)
+            throws IOException, SAXException, ParserConfigurationException {
+        TagSelection selection = new TagSelection(names);
+        if (selection.isComplete()) {
+            return selection.values();
+        }
+        SAXParser parser = XmlPools.borrowSAXParser();
         try {
-            // query xml
-            result = (NodeList) xpath.evaluate(xpathQuery, doc, XPathConstants.NODESET);
-        } catch (XPathExpressionException xpx) {
-            throw new Exception("Error evaluating XPath: " + xpx.getMessage(), xpx);
+            parser.parse(stream, new TagValueHandler(selection));
+        } catch (StopParsingException e) {
+            // all values found
+        } finally {
+            XmlPools.release(parser);
         }
-        return result;
+        return selection.values();
+    }
+
+    /**
+     * Performs a xpath query on a document and returns the matching nodelist.
+     *
+     * @param doc
+     * @param xpathQuery
+     * @return nodelist of matches
+     * @throws XPathExpressionException
+     */
+    public static NodeList query(Document doc, String xpathQuery) throws XPathExpressionException {
+        return query((Node) doc, xpathQuery);
     }
 
     /**
@@ -277,18 +339,72 @@ public final class XmlHelper {
      * @param context the Context where to start with the query
      * @param query the XPath-Query
      * @return nodelist of matches
-     * @throws Exception on error
+     * @throws XPathExpressionException on error
      */
-    public static NodeList query(Node context, String query) throws Exception {
-        NodeList result = null;
-        XPath xpath = XPathFactory.newInstance().newXPath();
+    public static NodeList query(Node context, String query) throws XPathExpressionException {
+        return XPATH_CACHE.evaluateNodeSet(query, context);
+    }
 
-        try {
-            result = (NodeList) xpath.evaluate(query, context, XPathConstants.NODESET);
-        } catch (XPathExpressionException xpx) {
-            throw new Exception("Error evaluating XPath: " + xpx.getMessage(), xpx);
-        }
-        return result;
+    /**
+     * Performs a xpath query with namespace prefixes and returns the matching nodelist.
+     *
+     * @param context the Context where to start with the query
+     * @param query the XPath-Query
+     * @param namespaces resolves the prefixes used in the query
+     * @return nodelist of matches
+     * @throws XPathExpressionException on error
+     */
+    public static NodeList query(Node context, String query, NamespaceContext namespaces)
+            throws XPathExpressionException {
+        return XPATH_CACHE.evaluateNodeSet(query, namespaces, context);
+    }
+
+    /**
+     * Performs a xpath query and returns the first matching node.
+     *
+     * @param context the Context where to start with the query
+     * @param query the XPath-Query
+     * @return the node or null, if nothing matches
+     * @throws XPathExpressionException on error
+     */
+    public static Node queryNode(Node context, String query) throws XPathExpressionException {
+        return XPATH_CACHE.evaluateNode(query, context);
+    }
+
+    /**
+     * Performs a xpath query and returns the result as string.
+     *
+     * @param context the Context where to start with the query
+     * @param query the XPath-Query
+     * @return the string value of the result
+     * @throws XPathExpressionException on error
+     */
+    public static String queryString(Node context, String query) throws XPathExpressionException {
+        return XPATH_CACHE.evaluateString(query, context);
+    }
+
+    /**
+     * Performs a xpath query and returns the result as number.
+     *
+     * @param context the Context where to start with the query
+     * @param query the XPath-Query
+     * @return the numeric value of the result, NaN if it is not a number
+     * @throws XPathExpressionException on error
+     */
+    public static double queryNumber(Node context, String query) throws XPathExpressionException {
+        return XPATH_CACHE.evaluateNumber(query, context);
+    }
+
+    /**
+     * Performs a xpath query and returns the result as boolean.
+     *
+     * @param context the Context where to start with the query
+     * @param query the XPath-Query
+     * @return the boolean value of the result
+     * @throws XPathExpressionException on error
+     */
+    public static boolean queryBoolean(Node context, String query) throws XPathExpressionException {
+        return XPATH_CACHE.evaluateBoolean(query, context);
     }
 
     /**
@@ -300,9 +416,50 @@ public final class XmlHelper {
      * @throws TransformerException
      */
     public static void parse(File file, ContentHandler handler) throws IOException, TransformerException {
-        final SAXTransformerFactory factory = (SAXTransformerFactory) TransformerFactory.newInstance();
-        final Transformer transformer = factory.newTransformer();
-        transformer.transform(new StreamSource(new FileReader(file)), new SAXResult(handler));
+        Transformer transformer = XmlPools.borrowTransformer();
+        try (FileReader reader = new FileReader(file)) {
+            transformer.transform(new StreamSource(reader), new SAXResult(handler));
+        } finally {
+            XmlPools.release(transformer);
+        }
+    }
+
+    /**
+     * Send the sax events of a node and its descendants to the content handler, for example of a record passed to a
+     * {@link RecordProcessor}.
+     *
+     * @param node
+     * @param handler
+     * @throws TransformerException
+     */
+    public static void parse(Node node, ContentHandler handler) throws TransformerException {
+        Transformer transformer = XmlPools.borrowTransformer();
+        try {
+            transformer.transform(new DOMSource(node), new SAXResult(handler));
+        } finally {
+            XmlPools.release(transformer);
+        }
+    }
+
+    /**
+     * Parse a file with a document element and many records as its children, and process the records concurrently.
+     * See {@link RecordSplitter}.
+     *
+     * @param <R> the type of the results
+     * @param file
+     * @param recordName the qualified name of the records or null for every child of the document element
+     * @param executor runs the processor
+     * @param processor called for every record as small DOM
+     * @param sink receives the results in the order of the records, may be null
+     * @return the number of records
+     * @throws IOException if the file cannot be read, a record cannot be processed or the processing was interrupted
+     * @throws XMLStreamException if the file is not well-formed
+     * @throws ParserConfigurationException
+     */
+    public static <R> long parseRecords(File file, String recordName, ExecutorService executor,
+            RecordProcessor<R> processor, RecordSink<R> sink)
+            throws IOException, XMLStreamException, ParserConfigurationException {
+        return new RecordSplitter(executor, recordName).process(file, processor, sink);
     }
 
     /**
@@ -318,16 +475,83 @@ public final class XmlHelper {
         String prologue = fileContents.substring(0, endOfPrologue + 2);
         StringBuffer sb = new StringBuffer(prologue).append(LINE_SEPARATOR);
         IndentContentHandler handler = new IndentContentHandler();
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setValidating(false);
-        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-        SAXParser saxParser = factory.newSAXParser();
-        saxParser.parse(file, handler);
+        SAXParser saxParser = XmlPools.borrowSAXParser();
+        try {
+            saxParser.parse(file, handler);
+        } finally {
+            XmlPools.release(saxParser);
+        }
         sb.append(handler.toString());
 
         return sb.toString();
     }
 
+    /**
+     * Indent a file and write the result to another file, without holding the document in memory.<br />
+     * The input is read with a StAX parser and written by an {@link XMLWriter} as it is parsed. The XML declaration is
+     * kept with its version, encoding and standalone values and the output is written in the declared encoding.
+     * Characters of text and attribute values the encoding cannot represent are written as character references;
+     * elsewhere they make the indentation fail without changing the output file. Comments, processing instructions
+     * and the document type declaration are kept as they are, and entity references are written as references
+     * without reading external DTDs or entities. The output still differs from the input: whitespace between
+     * elements is replaced by the indentation, text is trimmed onto its own lines and CDATA sections are written as
+     * escaped text. The output file is replaced atomically when complete, so it may be the same as the input.
+     *
+     * @param input
+     * @param output
+     * @throws IOException
+     * @throws XMLStreamException if the input is not well-formed
+     */
+    public static void indentXmlFile(File input, File output) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(input), STREAM_BUFFER_SIZE)) {
+            XMLStreamReader reader = createIndentReader(in);
+            try {
+                String encoding = reader.getCharacterEncodingScheme();
+                if (encoding == null) {
+                    encoding = reader.getEncoding() != null ? reader.getEncoding() : "UTF-8";
+                }
+                Charset charset;
+                try {
+                    charset = Charset.forName(encoding);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unsupported encoding " + encoding + " in " + input, e);
+                }
+                ChannelTextWriter writer = new ChannelTextWriter(output, charset, true);
+                boolean complete = false;
+                try {
+                    XMLWriter handler = new XMLWriter(writer, charset);
+                    handler.setDeclaration(reader.getVersion(), encoding, reader.standaloneSet() ? reader.isStandalone() : null);
+                    StaxToSax.pump(reader, handler);
+                    complete = true;
+                } catch (SAXException e) {
+                    throw new IOException("Error writing " + output + ": " + e.getMessage(), e);
+                } finally {
+                    if (complete) {
+                        writer.close();
+                    } else {
+                        writer.abort();
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Create a reader of a document for indentation or for checking that it can be indented. A reference to an
+     * undeclared entity is an error when the document has no external DTD subset, see {@link StaxToSax}.
+     *
+     * @param in
+     * @return the reader
+     * @throws XMLStreamException
+     */
+    static XMLStreamReader createIndentReader(InputStream in) throws XMLStreamException {
+        synchronized (INDENT_FACTORY) {
+            return INDENT_FACTORY.createXMLStreamReader(in);
+        }
+    }
+
     /**
      * Returns the String-Representation of the given DOM-Node as well-formed DOM-Document.
      *
@@ -337,12 +561,15 @@ public final class XmlHelper {
      * @throws Exception on error
      */
     public static String domNode2String(Node node, boolean indent) throws Exception {
-        Transformer transformer = TransformerFactory.newInstance().newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, indent ? "yes" : "no");
-
+        Transformer transformer = XmlPools.borrowTransformer();
         StreamResult result = new StreamResult(new StringWriter());
-        DOMSource source = new DOMSource(node);
-        transformer.transform(source, result);
+        try {
+            transformer.setOutputProperty(OutputKeys.INDENT, indent ? "yes" : "no");
+            DOMSource source = new DOMSource(node);
+            transformer.transform(source, result);
+        } finally {
+            XmlPools.release(transformer);
+        }
 
         String xmlString = result.getWriter().toString();
 
@@ -358,15 +585,15 @@ public final class XmlHelper {
      * @throws Exception on error
      */
     public static boolean equalsStructurally(String first, String second) throws Exception {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true);
-        dbf.setCoalescing(true);
-        dbf.setIgnoringElementContentWhitespace(true);
-        dbf.setIgnoringComments(true);
-
-        DocumentBuilder documentBuilder = dbf.newDocumentBuilder();
-        Document docOne = documentBuilder.parse(new InputSource(new StringReader(first)));
-        Document docTwo = documentBuilder.parse(new InputSource(new StringReader(second)));
+        Document docOne;
+        Document docTwo;
+        DocumentBuilder documentBuilder = XmlPools.borrowComparingDocumentBuilder();
+        try {
+            docOne = documentBuilder.parse(new InputSource(new StringReader(first)));
+            docTwo = documentBuilder.parse(new InputSource(new StringReader(second)));
+        } finally {
+            XmlPools.releaseComparingDocumentBuilder(documentBuilder);
+        }
 
         return equalsStructurally(docOne, docTwo);
     }
@@ -386,9 +613,33 @@ public final class XmlHelper {
         return first.isEqualNode(second);
     }
 
+    /**
+     * Returns true if the two files are structurally the same, comparing them with a {@link StructuralComparator}
+     * without building DOM trees.
+     *
+     * @param first first file to compare
+     * @param second second file to compare
+     * @return <code>boolean</code> - true if both documents are structurally the same
+     * @throws IOException
+     * @throws SAXException
+     * @throws ParserConfigurationException
+     */
+    public static boolean equalsStructurally(File first, File second)
+            throws IOException, SAXException, ParserConfigurationException {
+        StructuralComparator comparator = new StructuralComparator();
+        comparator.setMaxDifferences(1);
+        return comparator.compare(first, second).isEmpty();
+    }
+
     public static String indentXmlDom(String inXml) throws Exception {
         final InputSource src = new InputSource(new StringReader(inXml));
-        final Document domDoc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(src);
+        final Document domDoc;
+        DocumentBuilder builder = XmlPools.borrowDocumentBuilder();
+        try {
+            domDoc = builder.parse(src);
+        } finally {
+            XmlPools.release(builder);
+        }
         String encoding = domDoc.getXmlEncoding();
         if (encoding == null) {
             // defaults to UTF-8
@@ -397,8 +648,7 @@ public final class XmlHelper {
         final Node document = domDoc.getDocumentElement();
         final boolean keepDeclaration = inXml.startsWith("<?xml");
 
-        final DOMImplementationRegistry registry = DOMImplementationRegistry.newInstance();
-        final DOMImplementationLS impl = (DOMImplementationLS) registry.getDOMImplementation("LS");
+        final DOMImplementationLS impl = XmlPools.getDOMImplementationLS();
         final LSSerializer writer = impl.createLSSerializer();
 
         // Set this to true if the output needs to be beautified.
@@ -424,11 +674,12 @@ public final class XmlHelper {
      */
     public static String indentXmlSax2(File file) throws Exception {
         XMLWriter handler = new XMLWriter();
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setValidating(false);
-        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-        SAXParser saxParser = factory.newSAXParser();
-        saxParser.parse(file, handler);
+        SAXParser saxParser = XmlPools.borrowSAXParser();
+        try {
+            saxParser.parse(file, handler);
+        } finally {
+            XmlPools.release(saxParser);
+        }
 
         return handler.toString();
     }
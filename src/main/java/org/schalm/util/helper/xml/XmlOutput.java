@@ -0,0 +1,73 @@
+package org.schalm.util.helper.xml;
+
+import java.io.IOException;
+
+/**
+ * Buffered character sink used by {@link XMLWriter}, written to the underlying target when the buffer is full.
+ *
+ * @version $Id$
+ */
+abstract class XmlOutput {
+
+    /**
+     * Writes one character.
+     *
+     * @param c
+     * @throws IOException
+     */
+    abstract void write(char c) throws IOException;
+
+    /**
+     * Writes a range of characters.
+     *
+     * @param s
+     * @param start index of the first character
+     * @param end index after the last character
+     * @throws IOException
+     */
+    abstract void write(CharSequence s, int start, int end) throws IOException;
+
+    /**
+     * Writes a range of characters.
+     *
+     * @param ch
+     * @param start index of the first character
+     * @param end index after the last character
+     * @throws IOException
+     */
+    abstract void write(char[] ch, int start, int end) throws IOException;
+
+    /**
+     * Writes all characters of a string.
+     *
+     * @param s
+     * @throws IOException
+     */
+    void write(String s) throws IOException {
+        write(s, 0, s.length());
+    }
+
+    /**
+     * Writes the buffered data to the target without flushing it.
+     *
+     * @throws IOException
+     */
+    abstract void flushBuffer() throws IOException;
+
+    /**
+     * Writes the buffered data and flushes the target.
+     *
+     * @throws IOException
+     */
+    abstract void flush() throws IOException;
+
+    /**
+     * Completes the output and flushes the target, which is not closed.
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        flush();
+    }
+
+}
@@ -0,0 +1,237 @@
+package org.schalm.util.helper.xml;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.xml.sax.SAXException;
+
+/**
+ * Per-thread pools of configured parsers, transformers and XPath objects.<br />
+ * The factories are looked up only once. Every borrowed instance must be given back with the matching
+ * <code>release</code> method in a finally block, which resets it for the next use on the same thread:
+ * <pre>
+ * DocumentBuilder builder = XmlPools.borrowDocumentBuilder();
+ * try {
+ *     return builder.parse(stream);
+ * } finally {
+ *     XmlPools.release(builder);
+ * }
+ * </pre>
+ *
+ * @version $Id$
+ */
+public final class XmlPools {
+    /**
+     * Maximum number of idle instances of each kind kept per thread.
+     */
+    public static final int MAX_IDLE = 4;
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+    private static final DocumentBuilderFactory COMPARING_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+    private static final SAXParserFactory SAX_PARSER_FACTORY = SAXParserFactory.newInstance();
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+    private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+    private static final ThreadLocalPool<DocumentBuilder> DOCUMENT_BUILDERS = new DocumentBuilderPool();
+    private static final ThreadLocalPool<DocumentBuilder> COMPARING_BUILDERS = new DocumentBuilderPool();
+    private static final ThreadLocalPool<SAXParser> SAX_PARSERS = new ThreadLocalPool<SAXParser>(MAX_IDLE) {
+        @Override
+        void reset(SAXParser parser) {
+            parser.reset();
+        }
+
+    };
+    private static final ThreadLocalPool<Transformer> TRANSFORMERS = new ThreadLocalPool<Transformer>(MAX_IDLE) {
+        @Override
+        void reset(Transformer transformer) {
+            transformer.reset();
+        }
+
+    };
+    private static final ThreadLocalPool<XPath> XPATHS = new ThreadLocalPool<XPath>(MAX_IDLE) {
+        @Override
+        void reset(XPath xpath) {
+            xpath.reset();
+        }
+
+    };
+    private static volatile DOMImplementationLS domImplementationLS;
+
+    static {
+        COMPARING_BUILDER_FACTORY.setNamespaceAware(true);
+        COMPARING_BUILDER_FACTORY.setCoalescing(true);
+        COMPARING_BUILDER_FACTORY.setIgnoringElementContentWhitespace(true);
+        COMPARING_BUILDER_FACTORY.setIgnoringComments(true);
+        SAX_PARSER_FACTORY.setValidating(false);
+        try {
+            SAX_PARSER_FACTORY.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private XmlPools() {
+        // utility class
+    }
+
+    /**
+     * Borrow a document builder with the default configuration.
+     *
+     * @return the builder, to be released with {@link #release(DocumentBuilder)}
+     * @throws ParserConfigurationException
+     */
+    public static DocumentBuilder borrowDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = DOCUMENT_BUILDERS.poll();
+        return builder != null ? builder : newDocumentBuilder(DOCUMENT_BUILDER_FACTORY);
+    }
+
+    /**
+     * Return a document builder borrowed with {@link #borrowDocumentBuilder()}.
+     *
+     * @param builder the builder, may be null
+     */
+    public static void release(DocumentBuilder builder) {
+        DOCUMENT_BUILDERS.release(builder);
+    }
+
+    /**
+     * Borrow a namespace aware document builder that coalesces text and ignores comments and whitespace in element
+     * content, as used for structural comparisons.
+     *
+     * @return the builder, to be released with {@link #releaseComparingDocumentBuilder(DocumentBuilder)}
+     * @throws ParserConfigurationException
+     */
+    static DocumentBuilder borrowComparingDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = COMPARING_BUILDERS.poll();
+        return builder != null ? builder : newDocumentBuilder(COMPARING_BUILDER_FACTORY);
+    }
+
+    /**
+     * Return a document builder borrowed with {@link #borrowComparingDocumentBuilder()}.
+     *
+     * @param builder the builder, may be null
+     */
+    static void releaseComparingDocumentBuilder(DocumentBuilder builder) {
+        COMPARING_BUILDERS.release(builder);
+    }
+
+    /**
+     * Borrow a non-validating SAX parser that does not load external DTDs.
+     *
+     * @return the parser, to be released with {@link #release(SAXParser)}
+     * @throws ParserConfigurationException
+     * @throws SAXException
+     */
+    public static SAXParser borrowSAXParser() throws ParserConfigurationException, SAXException {
+        SAXParser parser = SAX_PARSERS.poll();
+        if (parser == null) {
+            synchronized (SAX_PARSER_FACTORY) {
+                parser = SAX_PARSER_FACTORY.newSAXParser();
+            }
+        }
+        return parser;
+    }
+
+    /**
+     * Return a SAX parser borrowed with {@link #borrowSAXParser()}.
+     *
+     * @param parser the parser, may be null
+     */
+    public static void release(SAXParser parser) {
+        SAX_PARSERS.release(parser);
+    }
+
+    /**
+     * Borrow an identity transformer.
+     *
+     * @return the transformer, to be released with {@link #release(Transformer)}
+     * @throws TransformerConfigurationException
+     */
+    public static Transformer borrowTransformer() throws TransformerConfigurationException {
+        Transformer transformer = TRANSFORMERS.poll();
+        if (transformer == null) {
+            synchronized (TRANSFORMER_FACTORY) {
+                transformer = TRANSFORMER_FACTORY.newTransformer();
+            }
+        }
+        return transformer;
+    }
+
+    /**
+     * Return a transformer borrowed with {@link #borrowTransformer()}, resetting its output properties and parameters.
+     *
+     * @param transformer the transformer, may be null
+     */
+    public static void release(Transformer transformer) {
+        TRANSFORMERS.release(transformer);
+    }
+
+    /**
+     * Borrow an XPath object.
+     *
+     * @return the XPath object, to be released with {@link #release(XPath)}
+     */
+    public static XPath borrowXPath() {
+        XPath xpath = XPATHS.poll();
+        if (xpath == null) {
+            synchronized (XPATH_FACTORY) {
+                xpath = XPATH_FACTORY.newXPath();
+            }
+        }
+        return xpath;
+    }
+
+    /**
+     * Return an XPath object borrowed with {@link #borrowXPath()}, resetting its namespace context and resolvers.
+     *
+     * @param xpath the XPath object, may be null
+     */
+    public static void release(XPath xpath) {
+        XPATHS.release(xpath);
+    }
+
+    /**
+     * Get the DOM implementation for load and save, looking it up in the registry only once.
+     *
+     * @return the implementation
+     * @throws ClassNotFoundException
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
+    public static DOMImplementationLS getDOMImplementationLS()
+            throws ClassNotFoundException, InstantiationException, IllegalAccessException {
+        DOMImplementationLS impl = domImplementationLS;
+        if (impl == null) {
+            impl = (DOMImplementationLS) DOMImplementationRegistry.newInstance().getDOMImplementation("LS");
+            domImplementationLS = impl;
+        }
+        return impl;
+    }
+
+    private static DocumentBuilder newDocumentBuilder(DocumentBuilderFactory factory) throws ParserConfigurationException {
+        synchronized (factory) {
+            return factory.newDocumentBuilder();
+        }
+    }
+
+    private static class DocumentBuilderPool extends ThreadLocalPool<DocumentBuilder> {
+
+        DocumentBuilderPool() {
+            super(MAX_IDLE);
+        }
+
+        @Override
+        void reset(DocumentBuilder builder) {
+            builder.reset();
+        }
+
+    }
+
+}
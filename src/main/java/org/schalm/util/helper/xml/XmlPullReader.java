@@ -0,0 +1,389 @@
+package org.schalm.util.helper.xml;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Reads a document as a stream of elements with a cursor, instead of building a DOM of the whole document.<br />
+ * The cursor moves forward only, from one start tag to another. Values can be read from the current element as text,
+ * numbers or attributes, and {@link #readElement()} turns just the current element and its descendants into a DOM
+ * element, for example to run XPath queries on it. Everything outside of the materialized subtrees is never held in
+ * memory. Element names are qualified names as written in the document. A reader must not be used by more than one
+ * thread.
+ * <pre>
+ * try (XmlPullReader reader = new XmlPullReader(file)) {
+ *     while (reader.nextElement("item")) {
+ *         Element item = reader.readElement();
+ *     }
+ * }
+ * </pre>
+ *
+ * @version $Id$
+ */
+public final class XmlPullReader implements Closeable {
+    private static final int BUFFER_SIZE = 0x10000;
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+    private final XMLStreamReader reader;
+    private final InputStream stream;
+    private int depth = 0;
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Creates a reader for a file, which is closed with the reader.
+     *
+     * @param file
+     * @throws IOException
+     * @throws XMLStreamException
+     */
+    public XmlPullReader(File file) throws IOException, XMLStreamException {
+        this.stream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            this.reader = createReader(stream);
+        } catch (XMLStreamException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a reader for a stream, which is not closed by the reader.
+     *
+     * @param stream
+     * @throws XMLStreamException
+     */
+    public XmlPullReader(InputStream stream) throws XMLStreamException {
+        this.stream = null;
+        this.reader = createReader(stream);
+    }
+
+    private static XMLStreamReader createReader(InputStream in) throws XMLStreamException {
+        synchronized (FACTORY) {
+            return FACTORY.createXMLStreamReader(in);
+        }
+    }
+
+    /**
+     * Move to the next start tag in document order.
+     *
+     * @return false, if the end of the document is reached
+     * @throws XMLStreamException
+     */
+    public boolean nextElement() throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (next() == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move to the next start tag with the given name in document order.
+     *
+     * @param name the qualified name of the element
+     * @return false, if the end of the document is reached
+     * @throws XMLStreamException
+     */
+    public boolean nextElement(String name) throws XMLStreamException {
+        while (nextElement()) {
+            if (name.equals(getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move to the next child of an element, skipping the descendants of the children.
+     * <pre>
+     * int parent = reader.getDepth();
+     * while (reader.nextChild(parent)) {
+     *     ...
+     * }
+     * </pre>
+     *
+     * @param parentDepth the depth of the parent element, as returned by {@link #getDepth()} on its start tag
+     * @return false, if the end tag of the parent has been reached
+     * @throws XMLStreamException
+     */
+    public boolean nextChild(int parentDepth) throws XMLStreamException {
+        if (depth < parentDepth) {
+            return false;
+        }
+        while (reader.hasNext()) {
+            int event = next();
+            if (event == XMLStreamConstants.START_ELEMENT && depth == parentDepth + 1) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT && depth < parentDepth) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The depth of the current element, 1 for the document element and 0 before it.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the qualified name of the current element
+     */
+    public String getName() {
+        String prefix = reader.getPrefix();
+        return prefix == null || prefix.isEmpty() ? reader.getLocalName() : prefix + ':' + reader.getLocalName();
+    }
+
+    /**
+     * @return the local name of the current element
+     */
+    public String getLocalName() {
+        return reader.getLocalName();
+    }
+
+    /**
+     * @return the namespace of the current element or null
+     */
+    public String getNamespaceURI() {
+        return reader.getNamespaceURI();
+    }
+
+    /**
+     * Get an attribute of the current element.
+     *
+     * @param name the qualified name of the attribute
+     * @return the value or null, if the element has no such attribute
+     */
+    public String getAttribute(String name) {
+        requireStartElement();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (name.equals(attributeName(i))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the text of the current element, which must not have child elements, and move to its end tag.
+     *
+     * @return the text, trimmed
+     * @throws XMLStreamException if the element has child elements
+     */
+    public String readText() throws XMLStreamException {
+        requireStartElement();
+        String text = reader.getElementText();
+        depth--;
+        return text.trim();
+    }
+
+    /**
+     * Read the text of the current element as number and move to its end tag.
+     *
+     * @return the value
+     * @throws XMLStreamException if the element has child elements
+     * @throws NumberFormatException if the text is not a number
+     */
+    public int readInt() throws XMLStreamException {
+        return Integer.parseInt(readText());
+    }
+
+    /**
+     * Read the text of the current element as number and move to its end tag.
+     *
+     * @return the value
+     * @throws XMLStreamException if the element has child elements
+     * @throws NumberFormatException if the text is not a number
+     */
+    public long readLong() throws XMLStreamException {
+        return Long.parseLong(readText());
+    }
+
+    /**
+     * Read the text of the current element as number and move to its end tag.
+     *
+     * @return the value
+     * @throws XMLStreamException if the element has child elements
+     * @throws NumberFormatException if the text is not a number
+     */
+    public double readDouble() throws XMLStreamException {
+        return Double.parseDouble(readText());
+    }
+
+    /**
+     * Read the text of the current element as boolean and move to its end tag.
+     *
+     * @return true, if the text is "true" ignoring case or "1"
+     * @throws XMLStreamException if the element has child elements
+     */
+    public boolean readBoolean() throws XMLStreamException {
+        String text = readText();
+        return "true".equalsIgnoreCase(text) || "1".equals(text);
+    }
+
+    /**
+     * Move to the end tag of the current element without reading its content.
+     *
+     * @throws XMLStreamException
+     */
+    public void skipElement() throws XMLStreamException {
+        requireStartElement();
+        int elementDepth = depth;
+        while (depth >= elementDepth) {
+            next();
+        }
+    }
+
+    /**
+     * Create an element with the name, namespace declarations and attributes of the current start tag, but without
+     * content. The cursor does not move.
+     *
+     * @return the element, the document element of a new document
+     * @throws ParserConfigurationException
+     */
+    public Element copyStartTag() throws ParserConfigurationException {
+        requireStartElement();
+        Document doc = newDocument();
+        Element element = createElement(doc);
+        doc.appendChild(element);
+        return element;
+    }
+
+    /**
+     * Read the current element with all its descendants into a DOM element and move to its end tag. The element is
+     * the document element of a new document.
+     *
+     * @return the element
+     * @throws XMLStreamException
+     * @throws ParserConfigurationException
+     */
+    public Element readElement() throws XMLStreamException, ParserConfigurationException {
+        requireStartElement();
+        Document doc = newDocument();
+        int elementDepth = depth;
+        Element root = createElement(doc);
+        doc.appendChild(root);
+        Node parent = root;
+        while (depth >= elementDepth) {
+            switch (next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    parent = parent.appendChild(createElement(doc));
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    parent = parent.getParentNode();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    parent.appendChild(doc.createTextNode(reader.getText()));
+                    break;
+                case XMLStreamConstants.CDATA:
+                    parent.appendChild(doc.createCDATASection(reader.getText()));
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    parent.appendChild(doc.createComment(reader.getText()));
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    parent.appendChild(doc.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    parent.appendChild(doc.createEntityReference(reader.getLocalName()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return root;
+    }
+
+    private static Document newDocument() throws ParserConfigurationException {
+        DocumentBuilder builder = XmlPools.borrowDocumentBuilder();
+        try {
+            return builder.newDocument();
+        } finally {
+            XmlPools.release(builder);
+        }
+    }
+
+    private Element createElement(Document doc) {
+        Element element = doc.createElementNS(emptyToNull(reader.getNamespaceURI()), getName());
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                    prefix == null || prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ':' + prefix,
+                    reader.getNamespaceURI(i) == null ? "" : reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)), attributeName(i),
+                    reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    private String attributeName(int index) {
+        String prefix = reader.getAttributePrefix(index);
+        String localName = reader.getAttributeLocalName(index);
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+    }
+
+    private int next() throws XMLStreamException {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+            depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+            depth--;
+        }
+        return event;
+    }
+
+    private void requireStartElement() {
+        if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Not positioned on a start tag");
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Closes the parser and the file, if the reader was created for a file.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Error closing reader: " + e.getMessage(), e);
+        } finally {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+
+}
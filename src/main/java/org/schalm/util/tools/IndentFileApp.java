@@ -5,18 +5,31 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
+import javax.xml.stream.XMLStreamException;
 import org.schalm.util.helper.file.ExampleFileFilter;
 import org.schalm.util.helper.file.FileHelper;
 import org.schalm.util.helper.log.InMemoryLogger;
+import org.schalm.util.helper.string.StringHelper;
+import org.schalm.util.helper.xml.XmlBatchProcessor;
 import org.schalm.util.helper.xml.XmlHelper;
 
 /**
- * Tool for indenting file using <code>IndentContentHandler</code>.
+ * Tool for indenting file using <code>IndentContentHandler</code>.<br />
+ * Files larger than {@link #MAX_DISPLAY_SIZE} are not displayed but indented directly into the file, after
+ * confirmation; the file is replaced only when it has been indented completely. Started with
+ * arguments <code>input [output]</code> the tool indents the input without user interface, replacing it if no output
+ * is given. If the input is a directory, all xml files in it are indented in place concurrently; with
+ * <code>--check</code> the files are only checked for well-formedness.
  *
  * @author <a href="mailto:cschalm@users.sourceforge.net">Carsten Schalm</a>
  * @version $Id: IndentFileApp.java 163 2014-03-06 14:02:38Z cschalm $
@@ -24,9 +37,18 @@ import org.schalm.util.helper.xml.XmlHelper;
 public class IndentFileApp extends javax.swing.JDialog {
     private static final InMemoryLogger log = new InMemoryLogger(new SimpleDateFormat("dd.MM.yyyy HH:mm:ss", Locale.GERMAN));
     public static final String fileExtension = "xml";
+    /**
+     * Files larger than this are indented as stream without displaying them (16 MB).
+     */
+    public static final long MAX_DISPLAY_SIZE = 0x1000000;
+    /**
+     * Command line option to check the input for well-formedness instead of indenting it.
+     */
+    public static final String CHECK_OPTION = "--check";
     private File lastDirectory = null;
     private String filePath;
     private String result;
+    private boolean largeFile = false;
 
     /**
      * Creates new form IndentFileTest.
@@ -176,6 +198,10 @@ public class IndentFileApp extends javax.swing.JDialog {
 	}//GEN-LAST:event_btnFileActionPerformed
 
 	private void btnIndentActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnIndentActionPerformed
+        if (this.largeFile) {
+            indentLargeFile();
+            return;
+        }
         try {
             this.result = XmlHelper.indentXmlDom(this.txtMessage.getText());
             this.setMessage(this.result);
@@ -214,6 +240,9 @@ public class IndentFileApp extends javax.swing.JDialog {
      * @param args the command line arguments
      */
     public static void main(String args[]) {
+        if (args.length > 0) {
+            System.exit(indentFile(args));
+        }
         try {
             String lookAndFeel = UIManager.getSystemLookAndFeelClassName();
             UIManager.setLookAndFeel(lookAndFeel);
@@ -238,11 +267,85 @@ public class IndentFileApp extends javax.swing.JDialog {
         });
     }
 
+    /**
+     * Indents or checks a file or all xml files of a directory without user interface.
+     *
+     * @param args <code>--check</code> to only check well-formedness, the input file or directory and optionally the
+     * output file
+     * @return the exit code
+     */
+    private static int indentFile(String[] args) {
+        boolean check = args[0].equals(CHECK_OPTION);
+        int first = check ? 1 : 0;
+        int count = args.length - first;
+        if (count < 1 || count > 2 || count == 2 && (check || new File(args[first]).isDirectory())) {
+            System.err.println("Usage: IndentFileApp [" + CHECK_OPTION + "] [input [output]]");
+            return 1;
+        }
+        File input = new File(args[first]);
+        if (check || input.isDirectory()) {
+            return processFiles(input, check ? XmlBatchProcessor.Operation.CHECK : XmlBatchProcessor.Operation.INDENT);
+        }
+        File output = count > 1 ? new File(args[first + 1]) : input;
+        try {
+            XmlHelper.indentXmlFile(input, output);
+            return 0;
+        } catch (IOException | XMLStreamException t) {
+            System.err.println("Error indenting file: " + t.getMessage());
+            return 2;
+        }
+    }
+
+    private static int processFiles(File input, XmlBatchProcessor.Operation operation) {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            XmlBatchProcessor processor = new XmlBatchProcessor(executor);
+            List<File> files = input.isDirectory() ? XmlBatchProcessor.listXmlFiles(input) : Collections.singletonList(input);
+            XmlBatchProcessor.BatchResult result = processor.process(files, operation);
+            for (XmlBatchProcessor.FileResult failure : result.getFailures()) {
+                System.err.println(failure);
+            }
+            System.out.println(result);
+            return result.getFailed() == 0 ? 0 : 2;
+        } catch (IOException e) {
+            System.err.println("Error processing files: " + e.getMessage());
+            return 2;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void indentLargeFile() {
+        File input = new File(this.filePath);
+        int answer = JOptionPane.showConfirmDialog(this, "The file " + input + " will be modified on disk. Continue?",
+                "Indent file in place", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+        if (answer != JOptionPane.OK_OPTION) {
+            return;
+        }
+        try {
+            // the file is only replaced once it has been indented completely
+            XmlHelper.indentXmlFile(input, input);
+            this.setMessage("Indented file written to " + input);
+        } catch (IOException | XMLStreamException t) {
+            log.log("Error indenting file: " + t.getMessage(), t);
+            this.setMessage(log.toString());
+        }
+        this.btnSave.setEnabled(false);
+        this.btnIndent.setEnabled(false);
+    }
+
     private void openFile() {
         try {
             lastDirectory = new File(filePath).getParentFile();
             this.txtFileName.setText(this.filePath);
-            this.setMessage(FileHelper.readTextFile(new File(this.txtFileName.getText())));
+            File file = new File(this.txtFileName.getText());
+            this.largeFile = file.length() > MAX_DISPLAY_SIZE;
+            if (this.largeFile) {
+                this.setMessage("File is too large to display (" + StringHelper.getSizeString(file.length())
+                        + "), press Indent to indent it directly. The file on disk will be modified.");
+            } else {
+                this.setMessage(FileHelper.readTextFile(file));
+            }
             this.btnIndent.setEnabled(this.txtFileName.getText() != null && this.txtFileName.getText().length() > 0);
         } catch (IOException ex) {
             log.log("Error opening file: " + ex.getMessage(), ex);
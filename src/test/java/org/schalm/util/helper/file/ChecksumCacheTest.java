@@ -0,0 +1,68 @@
+package org.schalm.util.helper.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Map;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+
+/**
+ * UnitTest for {@link ChecksumCache}.
+ *
+ * @version $Id$
+ */
+public class ChecksumCacheTest extends AbstractTest {
+    private static final File TEST_FILE = new File("./target/test-classes/test.zip");
+
+    @Test
+    public void testCache() throws Exception {
+        ChecksumCache cache = new ChecksumCache(10);
+        assertEquals("CRC32 not equal!", "AFAA0E73", cache.getCRC32(TEST_FILE));
+        assertEquals("Unexpected hit!", 0, cache.getHits());
+        assertEquals("CRC32 not equal!", "AFAA0E73", cache.getCRC32(TEST_FILE));
+        assertEquals("Missing hit!", 1, cache.getHits());
+        assertEquals("MD5 not equal!", "7576D1958DEFFB22D142F5B68147028D", cache.getMD5(TEST_FILE));
+        assertEquals("Unexpected hit!", 1, cache.getHits());
+        Map<String, String> result = cache.getChecksums(TEST_FILE, MultiDigest.MD5, MultiDigest.CRC32);
+        assertEquals("Missing hit!", 2, cache.getHits());
+        assertEquals("Wrong number of results!", 2, result.size());
+        assertEquals("Wrong number of entries!", 1, cache.size());
+    }
+
+    @Test
+    public void testModifiedFile() throws Exception {
+        File file = File.createTempFile("checksum", ".txt");
+        try {
+            Files.write(file.toPath(), "abc".getBytes(Charset.forName("UTF-8")));
+            ChecksumCache cache = new ChecksumCache(10);
+            assertEquals("CRC32 not equal!", "352441C2", cache.getCRC32(file));
+            Files.write(file.toPath(), "abcd".getBytes(Charset.forName("UTF-8")));
+            assertEquals("CRC32 not recomputed!", "ED82CD11", cache.getCRC32(file));
+            assertEquals("Unexpected hit!", 0, cache.getHits());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        File index = File.createTempFile("checksum", ".idx");
+        try {
+            ChecksumCache cache = new ChecksumCache(10);
+            cache.getChecksums(TEST_FILE, MultiDigest.CRC32, MultiDigest.SHA1);
+            cache.save(index);
+
+            ChecksumCache loaded = new ChecksumCache(10);
+            loaded.load(index);
+            assertEquals("Wrong number of entries!", 1, loaded.size());
+            assertEquals("SHA-1 not equal!", "50E09AAC86F3E432BF548098979D4AAEFC171556", loaded.getSHA1(TEST_FILE));
+            assertEquals("Index not used!", 1, loaded.getHits());
+        } finally {
+            index.delete();
+        }
+    }
+
+}
@@ -1,7 +1,21 @@
 package org.schalm.util.helper.file;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 import org.junit.Assert;
 import org.junit.Test;
 import org.schalm.util.helper.test.AbstractTest;
@@ -9,6 +23,7 @@ import org.schalm.util.test.TestUtil;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * UnitTest for {@link FileHelper}.
@@ -29,6 +44,96 @@ public class FileHelperTest extends AbstractTest {
         TestUtil.compareStrings(testContent, result);
     }
 
+    @Test
+    public void testReadTextFileCharset() throws Exception {
+        Charset utf8 = Charset.forName("UTF-8");
+        String testContent = "first line\r\nsecond line öäüß\nlast line without separator";
+        File file = File.createTempFile("test", ".txt");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(testContent.getBytes(utf8));
+        }
+        TestUtil.compareStrings(testContent, FileHelper.readTextFile(file, utf8));
+        TestUtil.compareStrings(testContent, FileHelper.readTextFile(file, utf8, 0));
+    }
+
+    @Test
+    public void testWriteTextFileCharset() throws Exception {
+        final Charset utf8 = Charset.forName("UTF-8");
+        final String testContent = "line öäüß 😀\n";
+        File file = File.createTempFile("test", ".txt");
+        file.deleteOnExit();
+        FileHelper.writeTextFile(file, new StringBuilder(testContent), utf8);
+        TestUtil.compareStrings(testContent, FileHelper.readTextFile(file, utf8));
+
+        final int lines = 20000;
+        FileHelper.writeTextFile(file, utf8, true, new TextProducer() {
+            @Override
+            public void writeTo(Writer out) throws IOException {
+                for (int i = 0; i < lines; i++) {
+                    // split the surrogate pair between two calls
+                    out.write(testContent, 0, 11);
+                    out.write(testContent.toCharArray(), 11, testContent.length() - 11);
+                }
+            }
+
+        });
+        String result = FileHelper.readTextFile(file, utf8);
+        assertEquals("Wrong length!", lines * testContent.length(), result.length());
+        assertTrue("Wrong content!", result.endsWith(testContent));
+        assertEquals("Wrong size!", lines * testContent.getBytes(utf8).length, file.length());
+    }
+
+    @Test
+    public void testWriteTextFileAtomicAbort() throws Exception {
+        Charset utf8 = Charset.forName("UTF-8");
+        final File file = File.createTempFile("test", ".txt");
+        file.deleteOnExit();
+        FileHelper.writeTextFile(file, "old content", utf8);
+        try {
+            FileHelper.writeTextFile(file, utf8, true, new TextProducer() {
+                @Override
+                public void writeTo(Writer out) throws IOException {
+                    out.write("new content");
+                    throw new IOException("producer failed");
+                }
+
+            });
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+            assertEquals("producer failed", e.getMessage());
+        }
+        TestUtil.compareStrings("old content", FileHelper.readTextFile(file, utf8));
+        assertEquals("Temporary file not deleted!", 1, file.getParentFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(file.getName());
+            }
+
+        }).length);
+    }
+
+    @Test
+    public void testWriteTextFileUnmappable() throws Exception {
+        final File file = File.createTempFile("test", ".txt");
+        file.deleteOnExit();
+        Charset latin1 = Charset.forName("ISO-8859-1");
+        FileHelper.writeTextFile(file, "old content", latin1);
+        try {
+            FileHelper.writeTextFile(file, latin1, true, new TextProducer() {
+                @Override
+                public void writeTo(Writer out) throws IOException {
+                    out.write("price: 5 \u20ac");
+                }
+
+            });
+            Assert.fail("Exception expected!");
+        } catch (IOException e) {
+            assertEquals("Character U+20AC cannot be encoded in ISO-8859-1", e.getMessage());
+        }
+        TestUtil.compareStrings("old content", FileHelper.readTextFile(file, latin1));
+    }
+
     @Test
     public void testZip() throws Exception {
         File currDir = new File("./target/test-classes");
@@ -38,6 +143,45 @@ public class FileHelperTest extends AbstractTest {
         assertTrue("created zip file does not exist!", destFile.exists());
     }
 
+    @Test
+    public void testZipParallel() throws Exception {
+        File[] files = new File("./target/test-classes").listFiles();
+        File destFile = File.createTempFile("test", ".zip");
+        destFile.deleteOnExit();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FileHelper.zip(destFile, files, executor);
+        } finally {
+            executor.shutdown();
+        }
+        int count = 0;
+        try (ZipFile zipFile = new ZipFile(destFile)) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    continue;
+                }
+                count++;
+                ZipEntry entry = zipFile.getEntry(file.getName());
+                assertTrue("Entry missing: " + file.getName(), entry != null);
+                byte[] expected = Files.readAllBytes(file.toPath());
+                assertEquals("Size of " + file.getName() + " is wrong!", expected.length, entry.getSize());
+                CRC32 crc = new CRC32();
+                crc.update(expected);
+                assertEquals("CRC of " + file.getName() + " is wrong!", crc.getValue(), entry.getCrc());
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    byte[] actual = new byte[expected.length];
+                    int read = 0;
+                    while (read < actual.length) {
+                        read += in.read(actual, read, actual.length - read);
+                    }
+                    Assert.assertArrayEquals("Content of " + file.getName() + " is wrong!", expected, actual);
+                    assertEquals("Entry is too long!", -1, in.read());
+                }
+            }
+            assertEquals("Number of entries is wrong!", count, zipFile.size());
+        }
+    }
+
     @Test
     public void testCRC32() throws Exception {
         File file = new File("./target/test-classes/test.zip");
@@ -61,11 +205,78 @@ public class FileHelperTest extends AbstractTest {
         String tempDir = System.getProperty("java.io.tmpdir");
         File testDir = new File(tempDir + FileHelper.FILE_SEPARATOR + new Date().getTime());
         testDir.mkdirs();
-        testDir.deleteOnExit();
-        File zipFile = new File("./target/test-classes/test.zip");
-        FileHelper.unzip(zipFile, testDir);
-        String[] files = testDir.list();
-        Assert.assertEquals("Number of unzipped files is wrong!", 5, files.length);
+        try {
+            File zipFile = new File("./target/test-classes/test.zip");
+            FileHelper.unzip(zipFile, testDir);
+            String[] files = testDir.list();
+            Assert.assertEquals("Number of unzipped files is wrong!", 5, files.length);
+        } finally {
+            TestUtil.deleteTree(testDir);
+        }
+    }
+
+    @Test
+    public void testUnzipParallel() throws Exception {
+        File zipFile = File.createTempFile("test", ".zip");
+        zipFile.deleteOnExit();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            out.putNextEntry(new ZipEntry("empty/"));
+            out.putNextEntry(new ZipEntry("a/b/c.txt"));
+            out.write("c".getBytes("UTF-8"));
+            out.putNextEntry(new ZipEntry("a/d.txt"));
+            out.write("d".getBytes("UTF-8"));
+            out.putNextEntry(new ZipEntry("e.txt"));
+        }
+        File testDir = Files.createTempDirectory("unzip").toFile();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            FileHelper.unzip(zipFile, testDir, executor);
+            assertTrue("Directory entry not extracted!", new File(testDir, "empty").isDirectory());
+            assertEquals("c", FileHelper.readTextFile(new File(testDir, "a/b/c.txt"), Charset.forName("UTF-8")));
+            assertEquals("d", FileHelper.readTextFile(new File(testDir, "a/d.txt"), Charset.forName("UTF-8")));
+            assertEquals(0, new File(testDir, "e.txt").length());
+        } finally {
+            executor.shutdown();
+            TestUtil.deleteTree(testDir);
+        }
+    }
+
+    @Test
+    public void testUnzipDuplicate() throws Exception {
+        File zipFile = File.createTempFile("test", ".zip");
+        zipFile.deleteOnExit();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            out.putNextEntry(new ZipEntry("a/b.txt"));
+            out.write("first".getBytes("UTF-8"));
+            out.putNextEntry(new ZipEntry("a/./b.txt"));
+            out.write("second".getBytes("UTF-8"));
+        }
+        File testDir = Files.createTempDirectory("unzip").toFile();
+        try {
+            FileHelper.unzip(zipFile, testDir);
+            fail("duplicate entry");
+        } catch (ZipException e) {
+            assertEquals("Duplicate entry: a/./b.txt", e.getMessage());
+            // nothing is extracted
+            assertEquals(0, testDir.list().length);
+        } finally {
+            TestUtil.deleteTree(testDir);
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void testUnzipOutsideOfTarget() throws Exception {
+        File zipFile = File.createTempFile("test", ".zip");
+        zipFile.deleteOnExit();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            out.putNextEntry(new ZipEntry("../evil.txt"));
+        }
+        File testDir = Files.createTempDirectory("unzip").toFile();
+        try {
+            FileHelper.unzip(zipFile, testDir);
+        } finally {
+            TestUtil.deleteTree(testDir);
+        }
     }
 
 }
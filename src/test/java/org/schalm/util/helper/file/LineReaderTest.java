@@ -0,0 +1,62 @@
+package org.schalm.util.helper.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+
+/**
+ * UnitTest for {@link LineReader}.
+ *
+ * @version $Id$
+ */
+public class LineReaderTest extends AbstractTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testLineTerminators() throws Exception {
+        String content = "first\r\nsecond\nthird\r\rfifth öäüß";
+        try (LineReader reader = open(content, 64)) {
+            assertLine(reader, "first", 1);
+            assertLine(reader, "second", 2);
+            assertLine(reader, "third", 3);
+            assertLine(reader, "", 4);
+            assertLine(reader, "fifth öäüß", 5);
+            assertFalse("No more lines expected!", reader.next());
+        }
+    }
+
+    @Test
+    public void testSmallBuffer() throws Exception {
+        // multi-byte characters and CR/LF pairs split across chunk boundaries
+        String content = "abcdefghijklmnä\r\nöäüöäüö\r\n€€€€€€€€€€€€€\n";
+        try (LineReader reader = open(content, 1)) {
+            assertLine(reader, "abcdefghijklmnä", 1);
+            assertLine(reader, "öäüöäüö", 2);
+            assertLine(reader, "€€€€€€€€€€€€€", 3);
+            assertFalse("No more lines expected!", reader.next());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBufferSize() {
+        open("", 0);
+    }
+
+    private static LineReader open(String content, int bufferSize) {
+        ByteArrayInputStream input = new ByteArrayInputStream(content.getBytes(UTF8));
+        return new LineReader(Channels.newChannel(input), UTF8, bufferSize);
+    }
+
+    private static void assertLine(LineReader reader, String expected, long lineNumber) throws Exception {
+        assertTrue("Line " + lineNumber + " expected!", reader.next());
+        assertEquals("Wrong content!", expected, reader.line().toString());
+        assertEquals("Wrong line number!", lineNumber, reader.getLineNumber());
+    }
+
+}
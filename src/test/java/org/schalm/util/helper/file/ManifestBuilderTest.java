@@ -0,0 +1,86 @@
+package org.schalm.util.helper.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+import org.schalm.util.test.TestUtil;
+
+/**
+ * UnitTest for {@link ManifestBuilder}.
+ *
+ * @version $Id$
+ */
+public class ManifestBuilderTest extends AbstractTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testBuild() throws Exception {
+        // a fresh directory, so no files of earlier runs end up in the manifest
+        File base = Files.createTempDirectory("manifest").toFile();
+        File root = new File(base, "tree");
+        File manifest = new File(base, "manifest.txt");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            write(new File(root, "b.txt"), "abc");
+            write(new File(root, "a.txt"), "abcd");
+            write(new File(root, "a/z.txt"), "");
+            ManifestBuilder builder = new ManifestBuilder(executor, MultiDigest.CRC32, MultiDigest.MD5);
+            builder.build(root, manifest);
+            List<String> lines = Files.readAllLines(manifest.toPath(), UTF8);
+            assertEquals("Wrong number of lines!", 4, lines.size());
+            assertEquals("Wrong header!", "# size\tmtime\tCRC32\tMD5\tpath", lines.get(0));
+            assertTrue("Wrong order!", lines.get(1).endsWith("\ta/z.txt"));
+            assertTrue("Wrong order!", lines.get(2).startsWith("4\t") && lines.get(2).endsWith("\ta.txt"));
+            assertTrue("Wrong checksum!", lines.get(3).contains("\t352441C2\t900150983CD24FB0D6963F7D28E17F72\tb.txt"));
+            assertEquals("Wrong number of files hashed!", 3, builder.getFilesHashed());
+
+            write(new File(root, "b.txt"), "abcde");
+            builder.build(root, manifest, manifest);
+            assertEquals("Wrong number of files hashed!", 1, builder.getFilesHashed());
+            assertEquals("Wrong number of files reused!", 2, builder.getFilesReused());
+            lines = Files.readAllLines(manifest.toPath(), UTF8);
+            assertEquals("Wrong number of lines!", 4, lines.size());
+            assertTrue("Changed file not hashed!", lines.get(3).contains("\t8587D865\tAB56B4D92B40713ACC5AF89985D4B786\tb.txt"));
+        } finally {
+            executor.shutdown();
+            TestUtil.deleteTree(base);
+        }
+    }
+
+    @Test(expected = NotDirectoryException.class)
+    public void testBuildFile() throws Exception {
+        File base = Files.createTempDirectory("manifest").toFile();
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            File root = new File(base, "file.txt");
+            write(root, "abc");
+            new ManifestBuilder(executor, MultiDigest.CRC32).build(root, new File(base, "manifest.txt"));
+        } finally {
+            executor.shutdown();
+            TestUtil.deleteTree(base);
+        }
+    }
+
+    @Test
+    public void testPathOrder() {
+        assertTrue(ManifestBuilder.PATH_ORDER.compare("a/b", "a.txt") < 0);
+        assertTrue(ManifestBuilder.PATH_ORDER.compare("ab", "a/x") > 0);
+        assertTrue(ManifestBuilder.PATH_ORDER.compare("a", "a/x") < 0);
+        assertEquals(0, ManifestBuilder.PATH_ORDER.compare("a/x", "a/x"));
+    }
+
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(UTF8));
+    }
+
+}
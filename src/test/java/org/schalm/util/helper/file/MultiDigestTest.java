@@ -0,0 +1,72 @@
+package org.schalm.util.helper.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+
+/**
+ * UnitTest for {@link MultiDigest}.
+ *
+ * @version $Id$
+ */
+public class MultiDigestTest extends AbstractTest {
+    private static final File TEST_FILE = new File("./target/test-classes/test.zip");
+
+    @Test
+    public void testDigest() throws Exception {
+        Map<String, String> result = FileHelper.getChecksums(TEST_FILE,
+                MultiDigest.CRC32, MultiDigest.MD5, MultiDigest.SHA1, MultiDigest.SHA256);
+        assertEquals("Wrong number of results!", 4, result.size());
+        assertEquals("CRC32 not equal!", "AFAA0E73", result.get(MultiDigest.CRC32));
+        assertEquals("MD5 not equal!", "7576D1958DEFFB22D142F5B68147028D", result.get(MultiDigest.MD5));
+        assertEquals("SHA-1 not equal!", "50E09AAC86F3E432BF548098979D4AAEFC171556", result.get(MultiDigest.SHA1));
+        assertEquals("SHA-256 not equal!", "7500CFDBAEA10C931E10DC98D598A475C177072C7C6254B17FAC08DA2A7D7D71",
+                result.get(MultiDigest.SHA256));
+    }
+
+    @Test
+    public void testTreeDigest() throws Exception {
+        final int chunkSize = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Map<String, String> result;
+        try {
+            result = MultiDigest.treeDigest(TEST_FILE, chunkSize, executor, MultiDigest.CRC32, MultiDigest.MD5);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("Combined CRC32 not equal!", "AFAA0E73", result.get(MultiDigest.CRC32));
+
+        byte[] content = Files.readAllBytes(TEST_FILE.toPath());
+        MessageDigest top = MessageDigest.getInstance("MD5");
+        for (int i = 0; i < content.length; i += chunkSize) {
+            MessageDigest chunk = MessageDigest.getInstance("MD5");
+            top.update(chunk.digest(Arrays.copyOfRange(content, i, Math.min(i + chunkSize, content.length))));
+        }
+        assertEquals("Hash list not equal!", FileHelper.formatHexBytes(top.digest()), result.get(MultiDigest.MD5));
+    }
+
+    @Test
+    public void testTreeDigestDefaultChunkSize() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Map<String, String> result;
+        try {
+            result = MultiDigest.treeDigest(TEST_FILE, executor, MultiDigest.CRC32, MultiDigest.MD5);
+        } finally {
+            executor.shutdown();
+        }
+        // a small file is a single chunk, so only the MD5 is hashed once more
+        assertEquals("AFAA0E73", result.get(MultiDigest.CRC32));
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        byte[] chunk = MessageDigest.getInstance("MD5").digest(Files.readAllBytes(TEST_FILE.toPath()));
+        assertEquals(FileHelper.formatHexBytes(md5.digest(chunk)), result.get(MultiDigest.MD5));
+    }
+
+}
@@ -0,0 +1,48 @@
+package org.schalm.util.helper.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+import org.schalm.util.test.TestUtil;
+
+/**
+ * UnitTest for {@link ResourceLoader}.
+ *
+ * @version $Id$
+ */
+public class ResourceLoaderTest extends AbstractTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final File TEST_FILE = new File("./target/test-classes/test.xml");
+
+    @Test
+    public void testGetText() throws Exception {
+        ResourceLoader loader = new ResourceLoader(getClass().getClassLoader(), 2);
+        String text = loader.getText("test.xml", UTF8);
+        TestUtil.compareStrings(FileHelper.readTextFile(TEST_FILE, UTF8), text);
+        assertSame("Text not cached!", text, loader.getText("test.xml", UTF8));
+        TestUtil.compareStrings(text, FileHelper.readTextStream("test.xml", UTF8));
+    }
+
+    @Test
+    public void testGetBytes() throws Exception {
+        ResourceLoader loader = new ResourceLoader(getClass().getClassLoader(), 2);
+        ByteBuffer content = loader.getBytes("test.zip");
+        assertEquals("Wrong size!", new File("./target/test-classes/test.zip").length(), content.remaining());
+        assertTrue("Buffer not read-only!", content.isReadOnly());
+        content.position(content.limit());
+        assertEquals("Cached buffer modified!", content.limit(), loader.getBytes("test.zip").remaining());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingResource() throws Exception {
+        new ResourceLoader(getClass().getClassLoader(), 2).getText("missing.xml", UTF8);
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.schalm.util.helper.string;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+
+/**
+ * UnitTest for {@link HexHelper}.
+ *
+ * @version $Id$
+ */
+public class HexHelperTest extends AbstractTest {
+	private static final byte[] RAW = {0x00, 0x01, 0x7F, (byte) 0x80, (byte) 0xAB, (byte) 0xFF};
+	private static final String HEX = "00017F80ABFF";
+
+	/**
+	 * Test of {@link HexHelper#toHex(byte[])} and {@link HexHelper#fromHex(CharSequence)}.
+	 */
+	@Test
+	public void testRoundTrip() {
+		assertEquals(HEX, HexHelper.toHex(RAW));
+		assertArrayEquals(RAW, HexHelper.fromHex(HEX));
+		assertArrayEquals(RAW, HexHelper.fromHex(HEX.toLowerCase()));
+		assertEquals("00000000", HexHelper.toHex(0));
+		assertEquals("AFAA0E73", HexHelper.toHex(0xAFAA0E73));
+	}
+
+	/**
+	 * Test of the encode methods writing into given targets.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testEncodeIntoTargets() throws Exception {
+		char[] chars = new char[HEX.length() + 2];
+		assertEquals(chars.length, HexHelper.encode(RAW, 0, RAW.length, chars, 2));
+		assertEquals(HEX, new String(chars, 2, HEX.length()));
+
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		HexHelper.encode(RAW, 4, 2, buffer);
+		assertEquals("ABFF", new String(buffer.array(), "US-ASCII"));
+
+		StringBuilder sb = new StringBuilder("0x");
+		HexHelper.encode(RAW, 2, 1, sb);
+		assertEquals("0x7F", sb.toString());
+
+		byte[] raw = new byte[3];
+		assertEquals(3, HexHelper.decode("xxABFF01", 2, 8, raw, 0));
+		assertArrayEquals(new byte[]{(byte) 0xAB, (byte) 0xFF, 0x01}, raw);
+	}
+
+	/**
+	 * Test of {@link HexHelper#fromHex(CharSequence)} with invalid input.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidDigit() {
+		HexHelper.fromHex("0G");
+	}
+
+}
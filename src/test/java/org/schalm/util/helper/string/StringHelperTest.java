@@ -4,8 +4,12 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
 import org.junit.Assert;
 import org.junit.Test;
+import org.schalm.util.helper.file.LineReader;
 import org.schalm.util.helper.test.AbstractTest;
 import org.schalm.util.test.TestUtil;
 
@@ -44,6 +48,18 @@ public class StringHelperTest extends AbstractTest {
 		assertTrue(StringHelper.isQuasiEmpty(content));
 	}
 
+	/**
+	 * Test of {@link StringHelper#isQuasiEmpty(char[], int, int) }.
+	 */
+	@Test
+	public void testIsQuasiEmptyChars() {
+		char[] content = "a \t-\n b".toCharArray();
+		assertTrue(StringHelper.isQuasiEmpty(content, 1, 5));
+		assertTrue(StringHelper.isQuasiEmpty(content, 3, 0));
+		assertFalse(StringHelper.isQuasiEmpty(content, 0, 2));
+		assertFalse(StringHelper.isQuasiEmpty(content, 5, 2));
+	}
+
 	/**
 	 * Test of {@link StringHelper#deleteEmptyRows(java.lang.String)}.
 	 */
@@ -65,6 +81,23 @@ public class StringHelperTest extends AbstractTest {
 		TestUtil.compareStrings(expected, result);
 	}
 
+	/**
+	 * Test of {@link StringHelper#deleteEmptyRows(LineReader, Appendable)}.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testDeleteEmptyRowsStreaming() throws Exception {
+		String content = "1\n\t\n2\r\n\t\n3\n--\n4\n\t\n5";
+		Charset utf8 = Charset.forName("UTF-8");
+		StringBuilder result = new StringBuilder();
+		try (LineReader reader = new LineReader(Channels.newChannel(new ByteArrayInputStream(content.getBytes(utf8))), utf8)) {
+			Assert.assertEquals(5, StringHelper.deleteEmptyRows(reader, result));
+		}
+		String expected = "1" + LINE_SEPARATOR + "2" + LINE_SEPARATOR + "3" + LINE_SEPARATOR + "4" + LINE_SEPARATOR + "5" + LINE_SEPARATOR;
+		TestUtil.compareStrings(expected, result.toString());
+	}
+
 	/**
 	 * Test of {@link StringHelper#getSizeString(long) }.
 	 */
@@ -0,0 +1,84 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.StringWriter;
+import javax.xml.parsers.DocumentBuilder;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * UnitTest for {@link DomSerializer}.
+ *
+ * @version $Id$
+ */
+public class DomSerializerTest extends AbstractTest {
+    private static final String LS = System.getProperty("line.separator");
+
+    @Test
+    public void testEscaping() throws Exception {
+        Document doc = newDocument();
+        Element root = doc.createElement("root");
+        root.setAttribute("a", "x < \"y\" & 'z'");
+        root.appendChild(doc.createTextNode("1 < 2 && \"3\" > 2"));
+        root.appendChild(doc.createCDATASection("<raw>"));
+        doc.appendChild(root);
+        assertEquals("<?xml version=\"1.0\"?>" + LS + "<root a=\"x &lt; &quot;y&quot; &amp; 'z'\">"
+                + "1 &lt; 2 &amp;&amp; \"3\" &gt; 2<![CDATA[<raw>]]></root>", XmlHelper.domTree2String(doc));
+
+        File file = File.createTempFile("test", ".xml");
+        file.deleteOnExit();
+        XmlHelper.saveXmlFile(doc, file);
+        Document read = XmlHelper.readXmlFile(file);
+        assertEquals("x < \"y\" & 'z'", read.getDocumentElement().getAttribute("a"));
+        assertEquals("1 < 2 && \"3\" > 2<raw>", read.getDocumentElement().getTextContent());
+    }
+
+    @Test
+    public void testDeepTree() throws Exception {
+        Document doc = newDocument();
+        int depth = 100000;
+        // built bottom-up, as every append below the document walks the whole ancestor chain
+        Node top = doc.createElement("e");
+        for (int i = 1; i < depth; i++) {
+            Node parent = doc.createElement("e");
+            parent.appendChild(top);
+            top = parent;
+        }
+        doc.appendChild(top);
+        StringWriter out = new StringWriter();
+        DomSerializer.write(doc, out);
+        String result = out.toString();
+        int open = result.split("<e>", -1).length - 1;
+        int close = result.split("</e>", -1).length - 1;
+        assertEquals(depth, open);
+        assertEquals(depth, close);
+    }
+
+    @Test
+    public void testBreakLines() throws Exception {
+        Document doc = newDocument();
+        Element root = doc.createElement("a");
+        Element child = doc.createElement("b");
+        child.appendChild(doc.createTextNode("t"));
+        root.appendChild(child);
+        root.appendChild(doc.createElement("c"));
+        StringBuilder out = new StringBuilder();
+        DomSerializer.write(root, out);
+        assertEquals(LS + "<a>" + LS + "<b>t</b>" + LS + "<c></c>" + LS + "</a>", out.toString());
+    }
+
+    private static Document newDocument() throws Exception {
+        DocumentBuilder builder = XmlPools.borrowDocumentBuilder();
+        try {
+            return builder.newDocument();
+        } finally {
+            XmlPools.release(builder);
+        }
+    }
+
+}
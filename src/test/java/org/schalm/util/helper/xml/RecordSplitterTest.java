@@ -0,0 +1,175 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+import org.schalm.util.test.TestUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * UnitTest for {@link RecordSplitter}.
+ *
+ * @version $Id$
+ */
+public class RecordSplitterTest extends AbstractTest {
+    private static final int RECORDS = 1000;
+
+    @Test
+    public void testProcess() throws Exception {
+        File directory = Files.createTempDirectory("records").toFile();
+        File input = createInput(new File(directory, "records.xml"));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<String> ids = new ArrayList<>();
+            RecordSink<String> sink = new RecordSink<String>() {
+                @Override
+                public void accept(String result) {
+                    ids.add(result);
+                }
+
+            };
+            RecordProcessor<String> processor = new RecordProcessor<String>() {
+                @Override
+                public String process(Element record, long index) throws Exception {
+                    String id = record.getAttribute("id");
+                    assertEquals(String.valueOf(index), id);
+                    assertEquals(id, XmlHelper.queryString(record, "v"));
+                    return id;
+                }
+
+            };
+            assertEquals(RECORDS, XmlHelper.parseRecords(input, "record", executor, processor, sink));
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < RECORDS; i++) {
+                expected.add(String.valueOf(i));
+            }
+            assertEquals(expected, ids);
+
+            ids.clear();
+            RecordSplitter splitter = new RecordSplitter(executor, "record");
+            splitter.setPreserveOrder(false);
+            assertEquals(RECORDS, splitter.process(input, processor, sink));
+            Collections.sort(ids);
+            Collections.sort(expected);
+            assertEquals(expected, ids);
+
+            RecordProcessor<String> failing = new RecordProcessor<String>() {
+                @Override
+                public String process(Element record, long index) {
+                    if (index == 500) {
+                        throw new IllegalStateException("bad record");
+                    }
+                    return null;
+                }
+
+            };
+            // every child of the document element, including the comment element
+            RecordProcessor<String> names = new RecordProcessor<String>() {
+                @Override
+                public String process(Element record, long index) {
+                    return record.getNodeName();
+                }
+
+            };
+            assertEquals(RECORDS + 1, new RecordSplitter(executor, null).process(input, names, null));
+            try {
+                splitter.process(input, failing, null);
+                fail("failing record");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("bad record"));
+            }
+        } finally {
+            executor.shutdown();
+            TestUtil.deleteTree(directory);
+        }
+    }
+
+    @Test
+    public void testParseNode() throws Exception {
+        File input = createInput(File.createTempFile("records", ".xml"));
+        try (XmlPullReader reader = new XmlPullReader(input)) {
+            assertTrue(reader.nextElement("record"));
+            BufferContentHandler handler = new BufferContentHandler();
+            XmlHelper.parse(reader.readElement(), handler);
+            assertEquals("<record id=\"0\"><v>0</v></record>", handler.toString());
+        } finally {
+            input.delete();
+        }
+    }
+
+    @Test
+    public void testWriteShards() throws Exception {
+        // fresh directories, so the shard count is not affected by earlier runs
+        File base = Files.createTempDirectory("records").toFile();
+        File input = createInput(new File(base, "records.xml"));
+        File directory = new File(base, "shards");
+        directory.mkdirs();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<File> shards = new RecordSplitter(executor, "record").writeShards(input, directory, 300);
+            assertEquals(4, shards.size());
+            assertEquals("records-00001.xml", shards.get(0).getName());
+            int index = 0;
+            for (File shard : shards) {
+                Document doc = XmlHelper.readXmlFile(shard);
+                Element root = doc.getDocumentElement();
+                assertEquals("feed", root.getNodeName());
+                assertEquals("1", root.getAttribute("version"));
+                for (Element record = firstElement(root); record != null; record = nextElement(record)) {
+                    assertEquals(String.valueOf(index++), record.getAttribute("id"));
+                }
+            }
+            assertEquals(RECORDS, index);
+            assertEquals(4, directory.list().length);
+        } finally {
+            executor.shutdown();
+            TestUtil.deleteTree(base);
+        }
+    }
+
+    private static File createInput(File file) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<feed version=\"1\">\n");
+        for (int i = 0; i < RECORDS; i++) {
+            xml.append("  <record id=\"").append(i).append("\"><v>").append(i).append("</v></record>\n");
+            if (i == 10) {
+                xml.append("  <comment>not a record</comment>\n");
+            }
+        }
+        xml.append("</feed>\n");
+        Files.write(file.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static Element firstElement(Element parent) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    private static Element nextElement(Element element) {
+        for (Node node = element.getNextSibling(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,197 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import javax.xml.parsers.SAXParser;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * UnitTest for {@link SaxRecorder} and {@link SaxReplayer}.
+ *
+ * @version $Id$
+ */
+public class SaxRecorderTest extends AbstractTest {
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<?style type=\"text\"?>\n"
+            + "<root xmlns:a=\"urn:a\" id=\"1\" text=\"ä &quot;quoted&quot;\">\n"
+            + "  <a:item a:key=\"k\">Grüße € 😀 &amp; &lt;more&gt;</a:item>\n"
+            + "  <item/><item>second</item>\n"
+            + "</root>";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] bytes = XML.getBytes(StandardCharsets.UTF_8);
+        EventLog expected = new EventLog();
+        parse(bytes, expected);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parse(bytes, new SaxRecorder(out));
+        EventLog replayed = new EventLog();
+        SaxReplayer.replay(ByteBuffer.wrap(out.toByteArray()), replayed);
+        assertEquals(expected.toString(), replayed.toString());
+        assertTrue(expected.toString().contains("😀"));
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        StringBuilder xml = new StringBuilder("<records>");
+        for (int i = 0; i < 10000; i++) {
+            xml.append("<record id=\"").append(i).append("\"><name>name ").append(i).append("</name></record>\n");
+        }
+        xml.append("</records>");
+        File input = File.createTempFile("recording", ".xml");
+        File recording = File.createTempFile("recording", ".sax");
+        try {
+            Files.write(input.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+            SaxRecorder.record(input, recording);
+            // names are written once, so the recording is smaller than the text
+            assertTrue(recording.length() < input.length());
+
+            BufferContentHandler expected = new BufferContentHandler();
+            XmlHelper.parse(input, expected);
+            BufferContentHandler replayed = new BufferContentHandler();
+            SaxReplayer.replay(recording, replayed);
+            assertEquals(expected.toString(), replayed.toString());
+        } finally {
+            input.delete();
+            recording.delete();
+        }
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parse(XML.getBytes(StandardCharsets.UTF_8), new SaxRecorder(out));
+        byte[] recording = out.toByteArray();
+        try {
+            SaxReplayer.replay(ByteBuffer.wrap("<root/>".getBytes(StandardCharsets.UTF_8)), new DefaultHandler());
+            fail("not a recording");
+        } catch (SAXException e) {
+            assertEquals("Not a SAX recording", e.getMessage());
+        }
+        try {
+            SaxReplayer.replay(ByteBuffer.wrap(Arrays.copyOf(recording, recording.length / 2)), new DefaultHandler());
+            fail("truncated");
+        } catch (SAXException e) {
+            assertEquals("Truncated recording", e.getMessage());
+        }
+        // cut right before the end of the document event
+        try {
+            SaxReplayer.replay(ByteBuffer.wrap(Arrays.copyOf(recording, recording.length - 1)), new DefaultHandler());
+            fail("no end of document");
+        } catch (SAXException e) {
+            assertEquals("Truncated recording", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRecordInvalid() throws Exception {
+        File directory = Files.createTempDirectory("recording").toFile();
+        File input = new File(directory, "broken.xml");
+        File recording = new File(directory, "broken.sax");
+        try {
+            Files.write(input.toPath(), "<root><item></root>".getBytes(StandardCharsets.UTF_8));
+            Files.write(recording.toPath(), new byte[] {1, 2, 3});
+            try {
+                SaxRecorder.record(input, recording);
+                fail("not well-formed");
+            } catch (SAXException e) {
+                // expected
+            }
+            // the old recording is kept and no temporary file is left
+            assertEquals(3, recording.length());
+            assertEquals(2, directory.list().length);
+        } finally {
+            input.delete();
+            recording.delete();
+            directory.delete();
+        }
+    }
+
+    private static void parse(byte[] xml, DefaultHandler handler) throws Exception {
+        SAXParser parser = XmlPools.borrowSAXParser();
+        try {
+            parser.parse(new ByteArrayInputStream(xml), handler);
+        } finally {
+            XmlPools.release(parser);
+        }
+    }
+
+    /**
+     * Writes every event with all its arguments.
+     */
+    private static final class EventLog extends DefaultHandler {
+        private final StringBuilder log = new StringBuilder();
+
+        @Override
+        public void startDocument() {
+            log.append("startDocument\n");
+        }
+
+        @Override
+        public void endDocument() {
+            log.append("endDocument\n");
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) {
+            log.append("startPrefixMapping ").append(prefix).append(' ').append(uri).append('\n');
+        }
+
+        @Override
+        public void endPrefixMapping(String prefix) {
+            log.append("endPrefixMapping ").append(prefix).append('\n');
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            log.append("startElement ").append(uri).append(' ').append(localName).append(' ').append(qName);
+            for (int i = 0; i < attributes.getLength(); i++) {
+                log.append(" [").append(attributes.getURI(i)).append(' ').append(attributes.getLocalName(i))
+                        .append(' ').append(attributes.getQName(i)).append(' ').append(attributes.getType(i))
+                        .append(' ').append(attributes.getValue(i)).append(']');
+            }
+            log.append('\n');
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            log.append("endElement ").append(uri).append(' ').append(localName).append(' ').append(qName).append('\n');
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            log.append("characters ").append(ch, start, length).append('\n');
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            log.append("ignorableWhitespace ").append(ch, start, length).append('\n');
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) {
+            log.append("processingInstruction ").append(target).append(' ').append(data).append('\n');
+        }
+
+        @Override
+        public String toString() {
+            return log.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPathExpressionException;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * UnitTest for {@link StreamingXPath}.
+ *
+ * @version $Id$
+ */
+public class StreamingXPathTest extends AbstractTest {
+    private static final String XML = "<feed><item id=\"1\" type=\"a\"><name>one</name></item>"
+            + "<group><item id=\"2\" type=\"b\"><name>two</name>text<b>bold</b></item></group>"
+            + "<item id=\"3\" type=\"a\"><name>three</name></item></feed>";
+
+    @Test
+    public void testMatches() throws Exception {
+        assertEquals("[one, three]", evaluate("/feed/item/name"));
+        assertEquals("[one, two, three]", evaluate("//item/name"));
+        assertEquals("[1, 2, 3]", evaluate("//@id"));
+        assertEquals("[1, 3]", evaluate("//item[@type='a']/@id"));
+        assertEquals("[2]", evaluate("/feed/*/item[ @type = \"b\" ][@id]/@id"));
+        assertEquals("[bold]", evaluate("//group//item[@id='2']/b"));
+        assertEquals("[]", evaluate("//item[@x]"));
+        assertEquals("[text]", evaluate("//group/item/text()"));
+        assertEquals("[twotextbold]", evaluate("//group/item"));
+        assertEquals("[]", evaluate("/item"));
+    }
+
+    @Test
+    public void testDescendantOrSelf() throws Exception {
+        // the element of the previous step is included
+        assertEquals("[2]", evaluate("//group/item//@id"));
+        assertEquals("[1, 2, 3]", evaluate("/feed//@id"));
+        assertEquals("[two, bold, text]", evaluate("//group/item//text()"));
+        assertEquals("[two, bold, text]", evaluate("/feed/group//text()"));
+        assertEquals("[one, two, bold, text, three]", evaluate("//text()"));
+    }
+
+    @Test
+    public void testAgainstDom() throws Exception {
+        File file = new File("src/test/resources/input.xml");
+        Document doc = XmlHelper.readXmlFile(file);
+        final List<String> values = new ArrayList<>();
+        StreamingXPath xpath = new StreamingXPath(new XPathMatchHandler() {
+            @Override
+            public boolean match(String expression, String value) {
+                values.add(value);
+                return true;
+            }
+
+        }, "//size/*", "/init/size/@fullScreen");
+        assertTrue(xpath.evaluate(file));
+        NodeList nodes = XmlHelper.query(doc, "//size/*");
+        assertEquals(nodes.getLength() + 1, values.size());
+        assertEquals(XmlHelper.queryString(doc, "/init/size/@fullScreen"), values.get(0));
+        for (int i = 0; i < nodes.getLength(); i++) {
+            assertEquals(nodes.item(i).getTextContent(), values.get(i + 1));
+        }
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        final List<String> values = new ArrayList<>();
+        StreamingXPath xpath = new StreamingXPath(new XPathMatchHandler() {
+            @Override
+            public boolean match(String expression, String value) {
+                values.add(value);
+                return values.size() < 2;
+            }
+
+        }, "//name");
+        assertFalse(xpath.evaluate(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8))));
+        assertEquals("[one, two]", values.toString());
+
+        values.clear();
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(
+                new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)));
+        assertFalse(xpath.evaluate(reader));
+        assertEquals("[one, two]", values.toString());
+    }
+
+    @Test
+    public void testHandlerError() throws Exception {
+        StreamingXPath xpath = new StreamingXPath(new XPathMatchHandler() {
+            @Override
+            public boolean match(String expression, String value) throws SAXException {
+                throw new SAXException("rejected " + value);
+            }
+
+        }, "//name");
+        try {
+            xpath.evaluate(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)));
+            fail("handler error ignored");
+        } catch (SAXException e) {
+            assertEquals("rejected one", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnsupported() {
+        String[] expressions = {"", "item", "/", "/a/", "/a b", "/a[1]", "/a[@b=c]", "/@id", "/a/@id/b", "/a/text()/b",
+            "/a[@b"};
+        for (String expression : expressions) {
+            try {
+                new StreamingXPath(null, expression);
+                fail("accepted " + expression);
+            } catch (XPathExpressionException e) {
+                // expected
+            }
+        }
+    }
+
+    private static String evaluate(String expression) throws Exception {
+        final List<String> values = new ArrayList<>();
+        StreamingXPath xpath = new StreamingXPath(new XPathMatchHandler() {
+            @Override
+            public boolean match(String expression, String value) {
+                values.add(value);
+                return true;
+            }
+
+        }, expression);
+        assertTrue(xpath.evaluate(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8))));
+        return values.toString();
+    }
+
+}
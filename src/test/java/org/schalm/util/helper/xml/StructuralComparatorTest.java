@@ -0,0 +1,63 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+
+/**
+ * UnitTest for {@link StructuralComparator}.
+ *
+ * @version $Id$
+ */
+public class StructuralComparatorTest extends AbstractTest {
+    private static final String XML = "<root><item id=\"1\" type=\"a\">one</item><item id=\"2\">two</item>"
+            + "<group><item id=\"3\">three</item></group></root>";
+
+    @Test
+    public void testEqual() throws Exception {
+        StructuralComparator comparator = new StructuralComparator();
+        assertEquals(Collections.emptyList(), compare(comparator, XML, XML));
+        String reordered = XML.replace("id=\"1\" type=\"a\"", "type=\"a\" id=\"1\"");
+        assertEquals(Collections.emptyList(), compare(comparator, XML, reordered));
+        comparator.setIgnoreAttributeOrder(false);
+        assertEquals(Arrays.asList("/root[1]/item[1]"), compare(comparator, XML, reordered));
+
+        File input = new File("src/test/resources/input.xml");
+        File indented = new File("src/test/resources/expectedResultAllSax.xml");
+        assertTrue(XmlHelper.equalsStructurally(input, input));
+        assertFalse(XmlHelper.equalsStructurally(input, indented));
+        comparator.setIgnoreWhitespace(true);
+        assertEquals(Collections.emptyList(), comparator.compare(input, indented));
+    }
+
+    @Test
+    public void testDifferences() throws Exception {
+        StructuralComparator comparator = new StructuralComparator();
+        String changed = XML.replace(">two<", ">TWO<").replace("id=\"3\"", "id=\"4\"");
+        assertEquals(Arrays.asList("/root[1]/item[2]/text()[1]", "/root[1]/group[1]/item[1]"),
+                compare(comparator, XML, changed));
+        comparator.setMaxDifferences(1);
+        assertEquals(Arrays.asList("/root[1]/item[2]/text()[1]"), compare(comparator, XML, changed));
+
+        comparator.setMaxDifferences(StructuralComparator.DEFAULT_MAX_DIFFERENCES);
+        String added = XML.replace("</group>", "<item id=\"5\"/></group>");
+        assertEquals(Arrays.asList("/root[1]/group[1]/item[2]"), compare(comparator, XML, added));
+        assertEquals(Arrays.asList("/root[1]/group[1]/item[2]"), compare(comparator, added, XML));
+        assertEquals(Arrays.asList("/root[1]"), compare(comparator, XML, "<other/>"));
+    }
+
+    private static List<String> compare(StructuralComparator comparator, String first, String second) throws Exception {
+        return comparator.compare(new ByteArrayInputStream(first.getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream(second.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
@@ -0,0 +1,171 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.xml.parsers.SAXParser;
+import org.junit.Test;
+import org.schalm.util.helper.file.FileHelper;
+import org.schalm.util.helper.test.AbstractTest;
+import org.schalm.util.test.TestUtil;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * UnitTest for {@link TeeContentHandler}.
+ *
+ * @version $Id$
+ */
+public class TeeContentHandlerTest extends AbstractTest {
+
+    @Test
+    public void testSynchronous() throws Exception {
+        BufferContentHandler first = new BufferContentHandler();
+        BufferContentHandler second = new BufferContentHandler();
+        parse(new TeeContentHandler(first, second));
+        String expected = FileHelper.readTextStream("expectedResultNoPrologue.xml").trim();
+        TestUtil.compareStrings(expected, first.toString());
+        TestUtil.compareStrings(expected, second.toString());
+    }
+
+    @Test
+    public void testAsynchronous() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            BufferContentHandler buffer = new BufferContentHandler();
+            IndentContentHandler indent = new IndentContentHandler();
+            IndentContentHandler expectedIndent = new IndentContentHandler();
+            parse(expectedIndent);
+            TeeContentHandler tee = new TeeContentHandler(executor, 1, buffer, indent);
+            // the handler can be reused for another parse
+            for (int i = 0; i < 2; i++) {
+                parse(tee);
+                TestUtil.compareStrings(FileHelper.readTextStream("expectedResultNoPrologue.xml").trim(),
+                        buffer.toString());
+                TestUtil.compareStrings(expectedIndent.toString(), indent.toString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testManyBatches() throws Exception {
+        StringBuilder xml = new StringBuilder("<root>");
+        for (int i = 0; i < 5000; i++) {
+            xml.append("<item id=\"").append(i).append("\">").append(i).append("</item>");
+        }
+        for (int i = 0; i < 3000; i++) {
+            xml.append("long text ");
+        }
+        xml.append("</root>");
+        byte[] bytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+        BufferContentHandler expected = new BufferContentHandler();
+        parse(new ByteArrayInputStream(bytes), expected);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BufferContentHandler first = new BufferContentHandler();
+            BufferContentHandler second = new BufferContentHandler();
+            parse(new ByteArrayInputStream(bytes), new TeeContentHandler(executor, 1, first, second));
+            assertEquals(expected.toString(), first.toString());
+            assertEquals(expected.toString(), second.toString());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testHandlerError() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DefaultHandler failing = new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes)
+                        throws SAXException {
+                    throw new SAXException("failing handler");
+                }
+
+            };
+            BufferContentHandler buffer = new BufferContentHandler();
+            try {
+                parse(new TeeContentHandler(executor, 1, buffer, failing));
+                fail("failing handler");
+            } catch (SAXException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("failing handler"));
+            }
+            // the error is thrown after the other handler got all events
+            TestUtil.compareStrings(FileHelper.readTextStream("expectedResultNoPrologue.xml").trim(), buffer.toString());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testHandlerThrowingError() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DefaultHandler failing = new DefaultHandler() {
+                @Override
+                public void endElement(String uri, String localName, String qName) {
+                    throw new AssertionError("failing handler");
+                }
+
+            };
+            try {
+                parse(new TeeContentHandler(executor, 1, new BufferContentHandler(), failing));
+                fail("failing handler");
+            } catch (SAXException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("failing handler"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTooFewThreads() throws Exception {
+        StringBuilder xml = new StringBuilder("<root>");
+        for (int i = 0; i < 5000; i++) {
+            xml.append("<item/>");
+        }
+        xml.append("</root>");
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            TeeContentHandler tee = new TeeContentHandler(executor, 1, new BufferContentHandler(),
+                    new BufferContentHandler());
+            tee.startTimeout = 200;
+            try {
+                parse(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)), tee);
+                fail("second handler never started");
+            } catch (SAXException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("needs a free thread"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void parse(DefaultHandler handler) throws Exception {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("input.xml")) {
+            parse(in, handler);
+        }
+    }
+
+    private static void parse(InputStream in, DefaultHandler handler) throws Exception {
+        SAXParser parser = XmlPools.borrowSAXParser();
+        try {
+            parser.parse(in, handler);
+        } finally {
+            XmlPools.release(parser);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import org.junit.Test;
+import org.schalm.util.helper.file.FileHelper;
+import org.schalm.util.helper.test.AbstractTest;
+import org.schalm.util.test.TestUtil;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * UnitTest for {@link XMLWriter}.
+ *
+ * @version $Id$
+ */
+public class XMLWriterTest extends AbstractTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    @Test
+    public void testEncoding() throws Exception {
+        String input = "<a b=\"x &amp; 'y' &lt; ä\">öäü &amp; 😀 &lt;c&gt;<d/></a>";
+        XMLWriter handler = new XMLWriter();
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        SAXParser saxParser = factory.newSAXParser();
+        saxParser.parse(new ByteArrayInputStream(input.getBytes(UTF8)), handler);
+        String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + LINE_SEPARATOR
+                + "<a" + LINE_SEPARATOR
+                + "\tb=\"x &amp; 'y' &lt; ä\">" + LINE_SEPARATOR
+                + "\töäü &amp; 😀 &lt;c&gt;" + LINE_SEPARATOR
+                + "\t<d />" + LINE_SEPARATOR
+                + "</a>" + LINE_SEPARATOR;
+        TestUtil.compareStrings(expected, handler.toString());
+    }
+
+    @Test
+    public void testCharacterReferences() throws Exception {
+        StringWriter writer = new StringWriter();
+        XMLWriter handler = new XMLWriter(writer, Charset.forName("ISO-8859-1"));
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute("", "a", "a", "CDATA", "\u20ac\ud83d\ude00\u00e4");
+        handler.startDocument();
+        handler.startElement("", "r", "r", attributes);
+        char[] text = "x\u4e2d\ud83d\ude00".toCharArray();
+        // the surrogate pair is split between two calls
+        handler.characters(text, 0, 3);
+        handler.characters(text, 3, 1);
+        handler.endElement("", "r", "r");
+        handler.endDocument();
+        String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + LINE_SEPARATOR
+                + "<r" + LINE_SEPARATOR
+                + "\ta=\"&#x20AC;&#x1F600;\u00e4\">" + LINE_SEPARATOR
+                + "\tx&#x4E2D;&#x1F600;" + LINE_SEPARATOR
+                + "</r>" + LINE_SEPARATOR;
+        TestUtil.compareStrings(expected, writer.toString());
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        File input = new File("src/test/resources/input.xml");
+        String expected = FileHelper.readTextFile(new File("src/test/resources/expectedResultAllSax.xml"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        factory.newSAXParser().parse(input, new XMLWriter(bytes));
+        TestUtil.compareStrings(expected, new String(bytes.toByteArray(), UTF8));
+
+        StringWriter writer = new StringWriter();
+        factory.newSAXParser().parse(input, new XMLWriter(writer));
+        TestUtil.compareStrings(expected, writer.toString());
+
+        bytes.reset();
+        factory.newSAXParser().parse(input, new XMLWriter(Channels.newChannel(bytes)));
+        TestUtil.compareStrings(expected, new String(bytes.toByteArray(), UTF8));
+    }
+
+    @Test
+    public void testLinesWithoutWordCharacters() throws Exception {
+        byte[] input = "<r><a>---</a><b>\u00f6\u00e4\u00fc</b><c>x</c></r>".getBytes(UTF8);
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+
+        // in memory such lines are dropped like by StringHelper.deleteEmptyRows
+        XMLWriter memory = new XMLWriter();
+        factory.newSAXParser().parse(new ByteArrayInputStream(input), memory);
+        assertFalse(memory.toString(), memory.toString().contains("---"));
+        assertFalse(memory.toString(), memory.toString().contains("\u00f6\u00e4\u00fc"));
+        assertTrue(memory.toString(), memory.toString().contains("x"));
+
+        // a target only loses lines of whitespace
+        StringWriter writer = new StringWriter();
+        factory.newSAXParser().parse(new ByteArrayInputStream(input), new XMLWriter(writer));
+        assertTrue(writer.toString(), writer.toString().contains("---"));
+        assertTrue(writer.toString(), writer.toString().contains("\u00f6\u00e4\u00fc"));
+    }
+
+}
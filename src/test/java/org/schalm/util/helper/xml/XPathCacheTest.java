@@ -0,0 +1,127 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathExpressionException;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+import org.w3c.dom.Document;
+
+/**
+ * UnitTest for {@link XPathCache}.
+ *
+ * @version $Id$
+ */
+public class XPathCacheTest extends AbstractTest {
+    private static final String XML = "<root><item id=\"1\">one</item><item id=\"2\">two</item></root>";
+
+    @Test
+    public void testTypedResults() throws Exception {
+        Document doc = XmlHelper.readXmlStream(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)));
+        XPathCache cache = new XPathCache(2);
+        assertEquals(2, cache.evaluateNodeSet("/root/item", doc).getLength());
+        assertEquals("two", cache.evaluateString("/root/item[@id='2']", doc));
+        assertEquals(2.0, cache.evaluateNumber("count(//item)", doc), 0.0);
+        assertTrue(cache.evaluateBoolean("//item[. = 'one']", doc));
+        assertNull(cache.evaluateNode("/root/missing", doc));
+        assertEquals(2, cache.size());
+        assertEquals("one", cache.evaluateString("/root/item[@id='1']", doc));
+        assertEquals("one", cache.evaluateString("/root/item[@id='1']", doc));
+        assertEquals(1, cache.getHits());
+        assertEquals(6, cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidExpression() throws Exception {
+        XPathCache cache = new XPathCache(2);
+        try {
+            cache.evaluateString("/root/[", null);
+            fail("invalid expression evaluated");
+        } catch (XPathExpressionException e) {
+            // expected
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNamespaces() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document doc = builder.parse(new ByteArrayInputStream(
+                "<a:root xmlns:a=\"urn:a\"><a:item>x</a:item></a:root>".getBytes(StandardCharsets.UTF_8)));
+        NamespaceContext namespaces = new NamespaceContext() {
+            @Override
+            public String getNamespaceURI(String prefix) {
+                return "n".equals(prefix) ? "urn:a" : XMLConstants.NULL_NS_URI;
+            }
+
+            @Override
+            public String getPrefix(String namespaceURI) {
+                return "urn:a".equals(namespaceURI) ? "n" : null;
+            }
+
+            @Override
+            public Iterator<String> getPrefixes(String namespaceURI) {
+                return Collections.singletonList(getPrefix(namespaceURI)).iterator();
+            }
+
+        };
+        XPathCache cache = new XPathCache(4);
+        assertEquals("x", cache.evaluateString("/n:root/n:item", namespaces, doc));
+        assertFalse(cache.evaluateBoolean("/root/item", doc));
+        assertEquals(1, XmlHelper.query(doc, "/n:root/n:item", namespaces).getLength());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        // only the cache is shared, a DOM is not thread-safe even for reading
+        final XPathCache cache = new XPathCache(4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        Document doc = XmlHelper.readXmlStream(
+                                new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)));
+                        int found = 0;
+                        for (int j = 0; j < 500; j++) {
+                            if ("two".equals(cache.evaluateString("/root/item[@id='2']", doc))) {
+                                found++;
+                            }
+                        }
+                        return found;
+                    }
+
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(500, future.get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, cache.size());
+    }
+
+}
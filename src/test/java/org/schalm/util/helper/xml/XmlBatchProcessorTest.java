@@ -0,0 +1,109 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import org.schalm.util.helper.file.FileHelper;
+import org.schalm.util.helper.test.AbstractTest;
+import org.schalm.util.test.TestUtil;
+
+/**
+ * UnitTest for {@link XmlBatchProcessor}.
+ *
+ * @version $Id$
+ */
+public class XmlBatchProcessorTest extends AbstractTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String BROKEN = "<root>\n<item></root>";
+
+    @Test
+    public void testProcess() throws Exception {
+        // a fresh tree, so the file counts are not affected by earlier runs
+        File root = Files.createTempDirectory("batch").toFile();
+        File input = new File("src/test/resources/input.xml");
+        File sub = new File(root, "sub");
+        sub.mkdirs();
+        for (int i = 0; i < 20; i++) {
+            Files.copy(input.toPath(), new File(i % 2 == 0 ? root : sub, "file" + i + ".xml").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        File broken = new File(sub, "broken.xml");
+        Files.write(broken.toPath(), BROKEN.getBytes(UTF8));
+        Files.write(new File(root, "ignored.txt").toPath(), BROKEN.getBytes(UTF8));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            XmlBatchProcessor processor = new XmlBatchProcessor(executor);
+            List<File> files = XmlBatchProcessor.listXmlFiles(root);
+            assertEquals(21, files.size());
+
+            XmlBatchProcessor.BatchResult result = processor.process(root, XmlBatchProcessor.Operation.CHECK);
+            assertEquals(21, result.getResults().size());
+            assertEquals(20, result.getSucceeded());
+            assertEquals(1, result.getFailed());
+            XmlBatchProcessor.FileResult failure = result.getFailures().get(0);
+            assertEquals(broken.getCanonicalFile(), failure.getFile().getCanonicalFile());
+            assertTrue(failure.getError(), failure.getError().startsWith("2:"));
+            assertEquals(20 * input.length() + BROKEN.length(), result.getBytes());
+
+            result = processor.process(files, XmlBatchProcessor.Operation.INDENT);
+            assertEquals(1, result.getFailed());
+            for (int i = 0; i < files.size(); i++) {
+                XmlBatchProcessor.FileResult fileResult = result.getResults().get(i);
+                assertEquals(files.get(i), fileResult.getFile());
+                if (fileResult.isSuccess()) {
+                    assertNull(fileResult.getError());
+                    TestUtil.compareStrings(FileHelper.readTextFile(new File("src/test/resources/expectedResultAllSax.xml")),
+                            FileHelper.readTextFile(fileResult.getFile()));
+                } else {
+                    assertFalse(fileResult.getError().isEmpty());
+                }
+            }
+            assertEquals(BROKEN, new String(Files.readAllBytes(broken.toPath()), UTF8));
+            // no temporary files left: 10 + ignored.txt + sub and 10 + broken.xml
+            assertEquals(23, root.list().length + sub.list().length);
+        } finally {
+            executor.shutdown();
+            TestUtil.deleteTree(root);
+        }
+    }
+
+    @Test
+    public void testDoctype() throws Exception {
+        File entity = File.createTempFile("entity", ".xml");
+        File undeclared = File.createTempFile("undeclared", ".xml");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            String xml = "<!DOCTYPE r [<!ENTITY foo \"bar\">]>\n<!-- comment -->\n<r>&foo;</r>";
+            Files.write(entity.toPath(), xml.getBytes(UTF8));
+            Files.write(undeclared.toPath(), "<r>&foo;</r>".getBytes(UTF8));
+            List<File> files = Arrays.asList(entity, undeclared);
+            XmlBatchProcessor processor = new XmlBatchProcessor(executor);
+            for (XmlBatchProcessor.Operation operation : XmlBatchProcessor.Operation.values()) {
+                XmlBatchProcessor.BatchResult result = processor.process(files, operation);
+                assertTrue(operation.name(), result.getResults().get(0).isSuccess());
+                assertFalse(operation.name(), result.getResults().get(1).isSuccess());
+            }
+            String indented = new String(Files.readAllBytes(entity.toPath()), UTF8);
+            assertTrue(indented, indented.contains("<!DOCTYPE r [<!ENTITY foo \"bar\">]>"));
+            assertTrue(indented, indented.contains("<!-- comment -->"));
+            assertTrue(indented, indented.contains("&foo;"));
+        } finally {
+            executor.shutdown();
+            entity.delete();
+            undeclared.delete();
+        }
+    }
+
+}
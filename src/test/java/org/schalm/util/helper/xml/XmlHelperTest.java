@@ -3,8 +3,17 @@ package org.schalm.util.helper.xml;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLStreamException;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.schalm.util.helper.file.FileHelper;
@@ -81,6 +90,61 @@ public class XmlHelperTest extends AbstractTest {
         assertTrue("Indented XML has different structure!", XmlHelper.equalsStructurally(result, expected));
     }
 
+    @Test
+    public void testIndentXmlFile() throws Exception {
+        File input = new File("src/test/resources/input.xml");
+        File output = File.createTempFile("test", ".xml");
+        output.deleteOnExit();
+        XmlHelper.indentXmlFile(input, output);
+        final String result = FileHelper.readTextFile(output);
+        final String expected = FileHelper.readTextFile(new File("src/test/resources/expectedResultAllSax.xml"));
+        TestUtil.compareStrings(expected, result);
+    }
+
+    @Test
+    public void testIndentXmlFileUnmappable() throws Exception {
+        File input = File.createTempFile("latin1", ".xml");
+        try {
+            String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><r a=\"&#8364;\">&#8364; euro \u00e4 &#x4e2d; &#x1F600;</r>";
+            Files.write(input.toPath(), xml.getBytes(StandardCharsets.ISO_8859_1));
+            XmlHelper.indentXmlFile(input, input);
+            String result = new String(Files.readAllBytes(input.toPath()), StandardCharsets.ISO_8859_1);
+            assertTrue(result, result.contains("a=\"&#x20AC;\""));
+            assertTrue(result, result.contains("&#x20AC; euro \u00e4 &#x4E2D; &#x1F600;"));
+            assertEquals("\u20ac euro \u00e4 \u4e2d \ud83d\ude00", XmlHelper.readXmlFile(input).getDocumentElement().getTextContent().trim());
+        } finally {
+            input.delete();
+        }
+    }
+
+    @Test
+    public void testIndentXmlFileDoctype() throws Exception {
+        File input = File.createTempFile("doctype", ".xml");
+        try {
+            String doctype = "<!DOCTYPE r [\n<!ENTITY foo \"bar\">\n<!-- internal -->\n]>";
+            String xml = "<?xml version=\"1.0\"?>\n" + doctype + "\n<!-- first -->\n<r><a>x &foo; y</a><!-- second --></r>";
+            Files.write(input.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+            XmlHelper.indentXmlFile(input, input);
+            String result = new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8);
+            assertTrue(result, result.contains(doctype));
+            assertTrue(result, result.contains("<!-- first -->"));
+            assertTrue(result, result.contains("<!-- second -->"));
+            assertTrue(result, result.contains("x &foo; y"));
+            assertEquals("x bar y", XmlHelper.readXmlFile(input).getDocumentElement().getTextContent().trim());
+
+            Files.write(input.toPath(), "<r>&undeclared;</r>".getBytes(StandardCharsets.UTF_8));
+            try {
+                XmlHelper.indentXmlFile(input, input);
+                fail("undeclared entity");
+            } catch (XMLStreamException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("undeclared"));
+            }
+            assertEquals("<r>&undeclared;</r>", new String(Files.readAllBytes(input.toPath()), StandardCharsets.UTF_8));
+        } finally {
+            input.delete();
+        }
+    }
+
     @Test
     public void testIndentXmlSax2() throws Exception {
         File input = new File("src/test/resources/input.xml");
@@ -91,4 +155,40 @@ public class XmlHelperTest extends AbstractTest {
         TestUtil.compareStrings(expected, result);
     }
 
+    @Test
+    public void testGetTagValues() throws Exception {
+        File input = new File("src/test/resources/input.xml");
+        Document doc = XmlHelper.readXmlFile(input);
+        List<String> names = Arrays.asList("posY", "size@fullScreen", "width", "size@missing", "missing", "posX");
+        Map<String, String> values = XmlHelper.getTagValues(doc, names);
+        assertEquals(names, new ArrayList<>(values.keySet()));
+        assertEquals(XmlHelper.getTagValue(doc, "posY"), values.get("posY"));
+        assertEquals(XmlHelper.getTagValue(doc, "posX"), values.get("posX"));
+        assertEquals(XmlHelper.getTagValue(doc, "width"), values.get("width"));
+        assertEquals(XmlHelper.getTagAttributeValue(doc, "size", "fullScreen"), values.get("size@fullScreen"));
+        assertEquals("", values.get("size@missing"));
+        assertEquals("", values.get("missing"));
+        assertEquals(values, XmlHelper.getTagValues(input, names));
+    }
+
+    @Test
+    public void testGetTagValuesStopsEarly() throws Exception {
+        // not well-formed after the requested tags
+        String xml = "<a><b x=\" 1 \"> two </b><c>three<d/>four</c><c>five</c><broken></a>";
+        Map<String, String> values = XmlHelper.getTagValues(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                Arrays.asList("b@x", "b", "c"));
+        assertEquals("{b@x=1, b=two, c=three}", values.toString());
+    }
+
+    @Test
+    public void testGetTagValuesMixedContent() throws Exception {
+        String xml = "<a><b><!-- note -->one<![CDATA[ & two]]> three<c/>four</b></a>";
+        List<String> names = Arrays.asList("b");
+        Map<String, String> values = XmlHelper.getTagValues(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                names);
+        assertEquals("{b=one & two three}", values.toString());
+        Document doc = XmlHelper.readXmlStream(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(values, XmlHelper.getTagValues(doc, names));
+    }
+
 }
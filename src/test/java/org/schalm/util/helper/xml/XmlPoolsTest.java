@@ -0,0 +1,74 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.SAXParser;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+import org.w3c.dom.Document;
+
+/**
+ * UnitTest for {@link XmlPools}.
+ *
+ * @version $Id$
+ */
+public class XmlPoolsTest extends AbstractTest {
+
+    @Test
+    public void testReuse() throws Exception {
+        DocumentBuilder builder = XmlPools.borrowDocumentBuilder();
+        DocumentBuilder nested = XmlPools.borrowDocumentBuilder();
+        assertNotSame(builder, nested);
+        XmlPools.release(nested);
+        XmlPools.release(builder);
+        assertSame(builder, XmlPools.borrowDocumentBuilder());
+        XmlPools.release(builder);
+
+        SAXParser parser = XmlPools.borrowSAXParser();
+        XmlPools.release(parser);
+        assertSame(parser, XmlPools.borrowSAXParser());
+        XmlPools.release(parser);
+
+        XPath xpath = XmlPools.borrowXPath();
+        XmlPools.release(xpath);
+        assertSame(xpath, XmlPools.borrowXPath());
+        XmlPools.release(xpath);
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        Transformer transformer = XmlPools.borrowTransformer();
+        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        XmlPools.release(transformer);
+
+        Transformer reused = XmlPools.borrowTransformer();
+        try {
+            assertSame(transformer, reused);
+            assertEquals("no", reused.getOutputProperty(OutputKeys.OMIT_XML_DECLARATION));
+            DocumentBuilder builder = XmlPools.borrowDocumentBuilder();
+            Document doc;
+            try {
+                doc = builder.newDocument();
+            } finally {
+                XmlPools.release(builder);
+            }
+            doc.appendChild(doc.createElement("root"));
+            StringWriter out = new StringWriter();
+            reused.transform(new DOMSource(doc), new StreamResult(out));
+            assertTrue(out.toString().startsWith("<?xml"));
+        } finally {
+            XmlPools.release(reused);
+        }
+    }
+
+}
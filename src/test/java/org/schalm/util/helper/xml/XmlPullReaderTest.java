@@ -0,0 +1,99 @@
+package org.schalm.util.helper.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.schalm.util.helper.test.AbstractTest;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * UnitTest for {@link XmlPullReader}.
+ *
+ * @version $Id$
+ */
+public class XmlPullReaderTest extends AbstractTest {
+    private static final String XML = "<feed xmlns:x=\"urn:x\"><head><count>2</count><valid>true</valid></head>"
+            + "<item id=\"1\" x:type=\"a\"><name>one</name><price>1.5</price></item>"
+            + "<skipped><item id=\"nested\"/></skipped>"
+            + "<item id=\"2\"><name>two</name><!--c--><x:extra>e<![CDATA[<d>]]></x:extra></item></feed>";
+
+    @Test
+    public void testNavigation() throws Exception {
+        try (XmlPullReader reader = open()) {
+            assertTrue(reader.nextElement("count"));
+            assertEquals(3, reader.getDepth());
+            assertEquals(2, reader.readInt());
+            assertTrue(reader.nextElement());
+            assertEquals("valid", reader.getName());
+            assertTrue(reader.readBoolean());
+
+            List<String> children = new ArrayList<>();
+            assertTrue(reader.nextElement("item"));
+            int parent = reader.getDepth() - 1;
+            assertEquals("1", reader.getAttribute("id"));
+            assertEquals("a", reader.getAttribute("x:type"));
+            assertNull(reader.getAttribute("type"));
+            children.add(reader.getName() + reader.getAttribute("id"));
+            while (reader.nextChild(parent)) {
+                children.add(reader.getName() + (reader.getAttribute("id") != null ? reader.getAttribute("id") : ""));
+            }
+            assertEquals("[item1, skipped, item2]", children.toString());
+            assertFalse(reader.nextChild(parent));
+            assertFalse(reader.nextElement());
+        }
+    }
+
+    @Test
+    public void testReadElement() throws Exception {
+        try (XmlPullReader reader = open()) {
+            assertTrue(reader.nextElement("item"));
+            int parent = reader.getDepth();
+            assertTrue(reader.nextChild(parent));
+            assertEquals("one", reader.readText());
+            assertTrue(reader.nextChild(parent));
+            assertEquals(1.5, reader.readDouble(), 0.0);
+            assertFalse(reader.nextChild(parent));
+
+            assertTrue(reader.nextElement("skipped"));
+            reader.skipElement();
+            assertTrue(reader.nextElement("item"));
+            assertEquals("2", reader.getAttribute("id"));
+            Element item = reader.readElement();
+            assertEquals(1, reader.getDepth());
+            Document doc = item.getOwnerDocument();
+            assertEquals(item, doc.getDocumentElement());
+            assertEquals("two", XmlHelper.queryString(doc, "/item/name"));
+            Element extra = (Element) item.getElementsByTagName("x:extra").item(0);
+            assertEquals("urn:x", extra.getNamespaceURI());
+            assertEquals("e<d>", extra.getTextContent());
+            // CDATA may be reported as text, depending on the StAX implementation
+            assertTrue(XmlHelper.domTree2String(item).contains("<item id=\"2\">"));
+            assertTrue(XmlHelper.domTree2String(item).contains("<name>two</name><!--c-->"));
+            assertFalse(reader.nextElement());
+        }
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        try (XmlPullReader reader = new XmlPullReader(new File("src/test/resources/input.xml"))) {
+            assertTrue(reader.nextElement("size"));
+            assertEquals("true", reader.getAttribute("fullScreen"));
+            assertTrue(reader.nextElement("width"));
+            assertEquals(1448L, reader.readLong());
+        }
+    }
+
+    private static XmlPullReader open() throws Exception {
+        return new XmlPullReader(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
@@ -4,6 +4,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import org.schalm.util.helper.xml.XmlHelper;
 
 /**
@@ -47,4 +54,33 @@ public class TestUtil {
         assertTrue("XML-Strings are different!", XmlHelper.equalsStructurally(expected, result));
     }
 
+    /**
+     * Deletes a file or a directory with all its content, if it exists.
+     *
+     * @param root
+     * @throws IOException
+     */
+    public static void deleteTree(File root) throws IOException {
+        if (!root.exists()) {
+            return;
+        }
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+        });
+    }
+
 }